@@ -9,7 +9,7 @@ for /r out %%f in (*.class) do del /f /q "%%f" 2>nul
 
 echo Compiling with Java 24...
 cd src
-javac -d ../out -source 24 -target 24 Main.java gui/*.java gui/components/*.java gui/panels/*.java models/*.java system/*.java
+javac -d ../out -source 24 -target 24 Main.java gui/*.java gui/components/*.java gui/panels/*.java models/*.java system/*.java server/*.java
 
 if %ERRORLEVEL% EQU 0 (
     echo Compilation successful!
@@ -18,7 +18,7 @@ Get-ChildItem -Path "out" -Recurse -Filter "*.class" -ErrorAction SilentlyContin
 # Compile with Java 24
 Write-Host "Compiling with Java 24..." -ForegroundColor Yellow
 cd src
-javac -d ../out -source 24 -target 24 Main.java gui/*.java gui/components/*.java gui/panels/*.java models/*.java system/*.java
+javac -d ../out -source 24 -target 24 Main.java gui/*.java gui/components/*.java gui/panels/*.java models/*.java system/*.java server/*.java
 
 if ($LASTEXITCODE -eq 0) {
     Write-Host "Compilation successful!" -ForegroundColor Green
@@ -1,12 +1,21 @@
 import gui.MainApplication;
+import server.ApiServer;
+import system.SocialNetworkSystem;
 import javax.swing.SwingUtilities;
+import java.io.IOException;
 
 /**
  * Main - Application entry point
- * Launches the SocialConnect application
+ * Launches the SocialConnect application, or with --server [--port=N] the
+ * headless HTTP/JSON API server on localhost instead of the GUI
  */
 public class Main {
     public static void main(String[] args) {
+        if (hasFlag(args, "--server")) {
+            startServer(args);
+            return;
+        }
+
         System.out.println("╔══════════════════════════════════════════╗"); 
         System.out.println("║     🌐 SocialConnect v1.0               ║ ");
         System.out.println("║     Mini Social Network System           ║");
@@ -27,5 +36,42 @@ public class Main {
             app.setVisible(true);
         });
     }
-}
 
+    private static void startServer(String[] args) {
+        int port = ApiServer.DEFAULT_PORT;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                try {
+                    port = Integer.parseInt(arg.substring("--port=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid port: " + arg);
+                    System.exit(1);
+                }
+            }
+        }
+        System.out.println("Starting SocialConnect API server...");
+        SocialNetworkSystem system = SocialNetworkSystem.getInstance();
+        try {
+            ApiServer server = new ApiServer(system, port);
+            // Save on Ctrl+C, after the requests in progress had a moment to finish
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(1);
+                system.forceSave();
+            }));
+            server.start();
+            System.out.println("✓ Listening on http://localhost:" + server.getPort() + "/api/");
+        } catch (IOException e) {
+            System.err.println("Could not start the API server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static boolean hasFlag(String[] args, String flag) {
+        for (String arg : args) {
+            if (arg.equals(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
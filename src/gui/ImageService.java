@@ -0,0 +1,224 @@
+package gui;
+
+import system.MediaStore;
+import system.ThumbnailStore;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * ImageService - Loads and scales avatars and post images off the EDT
+ * Images are decoded on a small pool of background threads, from the stored
+ * thumbnail when there is one (ThumbnailStore), otherwise from the original read
+ * subsampled so only about the pixels needed for the display size are decoded, and
+ * scaled once into a BufferedImage. Scaled images are kept in an LRU cache keyed by
+ * path (or media hash), display size and the file's modification time, bounded by
+ * their total pixel memory, so rebuilt panels show them again without touching the disk.
+ * Panels show a placeholder and swap the image in when it is ready (showIn).
+ */
+public final class ImageService {
+    private static final long CACHE_BYTES = 48L * 1024 * 1024;
+    private static final int LOADER_THREADS = 2;
+
+    private static final ImageService INSTANCE = new ImageService();
+
+    private final LinkedHashMap<String, BufferedImage> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> loading = new ConcurrentHashMap<>();
+    private final ExecutorService loader = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "image-loader");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1); // Stay behind the EDT
+        return thread;
+    });
+
+    /**
+     * Size - How an image is scaled for display
+     * Either a fixed square (avatars) or at most a given width keeping the aspect
+     * ratio, with the height multiplied by heightScale.
+     */
+    public static final class Size {
+        private final int width;
+        private final boolean square;
+        private final double heightScale;
+
+        private Size(int width, boolean square, double heightScale) {
+            this.width = width;
+            this.square = square;
+            this.heightScale = heightScale;
+        }
+
+        public static Size square(int size) {
+            return new Size(size, true, 1);
+        }
+
+        public static Size maxWidth(int width) {
+            return new Size(width, false, 1);
+        }
+
+        public static Size maxWidth(int width, double heightScale) {
+            return new Size(width, false, heightScale);
+        }
+
+        // Display dimensions for an image of the given dimensions
+        Dimension scale(int sourceWidth, int sourceHeight) {
+            if (square) {
+                return new Dimension(width, width);
+            }
+            int displayWidth = Math.min(sourceWidth, width);
+            int displayHeight = (int) ((double) displayWidth / sourceWidth * sourceHeight * heightScale);
+            return new Dimension(displayWidth, Math.max(1, displayHeight));
+        }
+
+        @Override
+        public String toString() {
+            return (square ? "sq" : "w") + width + "x" + heightScale;
+        }
+    }
+
+    private ImageService() {
+    }
+
+    public static ImageService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The scaled image if it is already cached, otherwise null (does not load it)
+     */
+    public BufferedImage getIfCached(String path, Size size) {
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        return cached(keyOf(path, size));
+    }
+
+    /**
+     * Load and scale an image in the background. The future fails with a
+     * FileNotFoundException if the file is missing, an IOException if it can't be read.
+     */
+    public CompletableFuture<BufferedImage> load(String path, Size size) {
+        if (path == null || path.isEmpty()) {
+            return CompletableFuture.failedFuture(new FileNotFoundException("No image"));
+        }
+        File file = MediaStore.getInstance().resolve(path);
+        String key = keyOf(path, size);
+        BufferedImage image = cached(key);
+        if (image != null) {
+            return CompletableFuture.completedFuture(image);
+        }
+        // One load per key, however many labels are waiting for it
+        CompletableFuture<BufferedImage> future = loading.computeIfAbsent(key, k ->
+            CompletableFuture.supplyAsync(() -> {
+                try {
+                    BufferedImage loaded = decode(path, file, size);
+                    store(k, loaded);
+                    return loaded;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, loader));
+        future.whenComplete((loaded, error) -> loading.remove(key, future));
+        return future;
+    }
+
+    /**
+     * Show an image in a label: at once if cached, otherwise when it has loaded.
+     * Until then the label keeps whatever placeholder it has. onFailure runs on the
+     * EDT with the cause if the image can't be shown. A label given a new image
+     * meanwhile ignores the older one.
+     */
+    public void showIn(JLabel label, String path, Size size, Consumer<Throwable> onFailure) {
+        BufferedImage image = getIfCached(path, size);
+        if (image != null) {
+            label.putClientProperty(ImageService.class, null);
+            setImage(label, image);
+            return;
+        }
+        Object request = new Object();
+        label.putClientProperty(ImageService.class, request);
+        load(path, size).whenComplete((loaded, error) -> SwingUtilities.invokeLater(() -> {
+            if (label.getClientProperty(ImageService.class) != request) {
+                return;
+            }
+            label.putClientProperty(ImageService.class, null);
+            if (loaded != null) {
+                setImage(label, loaded);
+            } else if (onFailure != null) {
+                onFailure.accept(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error);
+            }
+        }));
+    }
+
+    private static void setImage(JLabel label, BufferedImage image) {
+        label.setText(null);
+        label.setIcon(new ImageIcon(image));
+        label.revalidate();
+        label.repaint();
+    }
+
+    // ==================== DECODING ====================
+
+    private static BufferedImage decode(String path, File file, Size size) throws IOException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getName());
+        }
+        // A stored thumbnail is much smaller to read than the original
+        File source = file;
+        try {
+            File thumbnail = ThumbnailStore.getInstance().find(path, size.width, size.square);
+            if (thumbnail != null) {
+                source = thumbnail;
+            }
+        } catch (IOException e) {
+            System.err.println("Thumbnail unavailable for " + file.getName() + ": " + e.getMessage());
+        }
+        BufferedImage decoded = ThumbnailStore.readSubsampled(source, size.width, size.square ? size.width : 0);
+        Dimension target = size.scale(decoded.getWidth(), decoded.getHeight());
+        return ThumbnailStore.scale(decoded, target.width, target.height);
+    }
+
+    // ==================== CACHE ====================
+
+    // Helper: A changed file gets a new key, so a stale scaled copy is never returned
+    // (stored media never changes, and is shared by everything with the same content)
+    private static String keyOf(String path, Size size) {
+        String hash = MediaStore.hashOf(path);
+        if (hash != null) {
+            return hash + "|" + size;
+        }
+        File file = new File(path);
+        return file.getPath() + "|" + size + "|" + file.lastModified();
+    }
+
+    private synchronized BufferedImage cached(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void store(String key, BufferedImage image) {
+        BufferedImage previous = cache.put(key, image);
+        if (previous != null) {
+            cachedBytes -= bytesOf(previous);
+        }
+        cachedBytes += bytesOf(image);
+        Iterator<Map.Entry<String, BufferedImage>> eldest = cache.entrySet().iterator();
+        while (cachedBytes > CACHE_BYTES && cache.size() > 1) {
+            cachedBytes -= bytesOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private static long bytesOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+}
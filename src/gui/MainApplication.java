@@ -15,11 +15,11 @@ public class MainApplication extends JFrame {
     private JPanel mainPanel;
     private LoginPanel loginPanel;
     private RegistrationPanel registrationPanel;
-    private MainAppPanel mainAppPanel;
-    private SocialNetworkSystem system;
+    private MainAppPanel mainAppPanel; // Created on first login, once the data has loaded
 
     public MainApplication() {
-        system = SocialNetworkSystem.getInstance();
+        // Load saved data in the background while the login screen is shown
+        SocialNetworkSystem.preload();
         initFrame();
         initComponents();
         setupCallbacks();
@@ -36,14 +36,14 @@ public class MainApplication extends JFrame {
         addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
-                system.forceSave();
+                SocialNetworkSystem.getInstance().forceSave();
                 System.exit(0);
             }
         });
         
         // Add shutdown hook as backup
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            system.forceSave();
+            SocialNetworkSystem.getInstance().forceSave();
         }));
         
       
@@ -68,15 +68,13 @@ public class MainApplication extends JFrame {
         };
         mainPanel.setOpaque(true);
 
-        // Create all panels
+        // Create the light panels now, the main app panel needs the loaded data
         loginPanel = new LoginPanel();
         registrationPanel = new RegistrationPanel();
-        mainAppPanel = new MainAppPanel();
 
         // Add panels to card layout
         mainPanel.add(loginPanel, "login");
         mainPanel.add(registrationPanel, "register");
-        mainPanel.add(mainAppPanel, "main");
 
         add(mainPanel);
 
@@ -87,6 +85,7 @@ public class MainApplication extends JFrame {
     private void setupCallbacks() {
         // Login panel callbacks
         loginPanel.setOnLoginSuccess(() -> {
+            ensureMainAppPanel();
             mainAppPanel.refreshAll();
             showMainApp();
         });
@@ -97,6 +96,16 @@ public class MainApplication extends JFrame {
         registrationPanel.setOnRegistrationSuccess(this::showLogin);
         registrationPanel.setOnSwitchToLogin(this::showLogin);
 
+    }
+
+    // Build the main app panel the first time it is needed
+    private void ensureMainAppPanel() {
+        if (mainAppPanel != null) {
+            return;
+        }
+        mainAppPanel = new MainAppPanel();
+        mainPanel.add(mainAppPanel, "main");
+
         // Main app callbacks
         mainAppPanel.setOnLogout(() -> {
             loginPanel.clearFields();
@@ -115,7 +124,9 @@ public class MainApplication extends JFrame {
     }
 
     public void showMainApp() {
+        ensureMainAppPanel();
         cardLayout.show(mainPanel, "main");
+        SocialNetworkSystem system = SocialNetworkSystem.getInstance();
         String userName = system.getCurrentUser() != null ? 
                          system.getCurrentUser().getFullName() : "User";
         setTitle("SocialConnect - Welcome, " + userName);
@@ -0,0 +1,298 @@
+package gui.components;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * VirtualList - Vertical list that only builds components for rows near the viewport
+ * Every item has a row whose height is cached once its component has been measured
+ * (rows never built yet use an estimate), so the list knows its full height without
+ * creating a component per item. As the viewport moves, rows that scroll out of range
+ * are detached and kept in a small cache, and the rows coming into range are taken
+ * from that cache or built by the renderer. When measured heights differ from the
+ * estimates above the viewport, the view is moved so the visible content stays put.
+ */
+public class VirtualList<T> extends JPanel implements Scrollable {
+    private static final int OVERSCAN = 600; // Pixels above and below the viewport that are also built
+    private static final int CACHE_SIZE = 24; // Detached components kept for reuse
+
+    private final Function<T, String> keyOf;
+    private final Function<T, JComponent> renderer;
+    private final int estimatedHeight;
+    private final int topPadding;
+    private final int gap;
+    private final int bottomPadding;
+
+    private final ArrayList<T> items = new ArrayList<>();
+    private final HashMap<String, Integer> heights = new HashMap<>(); // Measured heights by item key
+    private int[] rowTops = new int[1]; // Row i spans rowTops[i] to rowTops[i + 1] - gap
+    private final HashMap<Integer, JComponent> shown = new HashMap<>(); // Row -> attached component
+    private final LinkedHashMap<String, JComponent> recycled = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JComponent> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private JComponent emptyView;
+    private boolean updating;
+    private final ChangeListener viewportListener = e -> updateWindow(false);
+
+    public VirtualList(Function<T, String> keyOf, Function<T, JComponent> renderer,
+                       int estimatedHeight, int topPadding, int gap, int bottomPadding) {
+        this.keyOf = keyOf;
+        this.renderer = renderer;
+        this.estimatedHeight = estimatedHeight;
+        this.topPadding = topPadding;
+        this.gap = gap;
+        this.bottomPadding = bottomPadding;
+        setLayout(null);
+        setOpaque(false);
+        rowTops[0] = topPadding;
+    }
+
+    /**
+     * Replace all items (components built so far are dropped, measured heights are kept)
+     */
+    public void setItems(List<T> newItems) {
+        items.clear();
+        items.addAll(newItems);
+        shown.clear();
+        recycled.clear();
+        removeAll();
+        if (items.isEmpty() && emptyView != null) {
+            add(emptyView);
+        }
+        updateOffsets();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Append items below the current ones
+     */
+    public void addItems(List<T> moreItems) {
+        if (moreItems.isEmpty()) {
+            return;
+        }
+        if (items.isEmpty() && emptyView != null) {
+            remove(emptyView);
+        }
+        items.addAll(moreItems);
+        updateOffsets();
+        revalidate();
+        repaint();
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    /**
+     * Component shown instead of the rows while there are no items
+     */
+    public void setEmptyView(JComponent view) {
+        if (emptyView != null) {
+            remove(emptyView);
+        }
+        emptyView = view;
+        if (items.isEmpty() && view != null) {
+            add(view);
+        }
+        revalidate();
+        repaint();
+    }
+
+    // ==================== LAYOUT ====================
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (items.isEmpty()) {
+            int emptyHeight = emptyView != null ? emptyView.getPreferredSize().height : 0;
+            return new Dimension(0, topPadding + emptyHeight + bottomPadding);
+        }
+        return new Dimension(0, rowTops[items.size()] - gap + bottomPadding);
+    }
+
+    @Override
+    public void doLayout() {
+        if (items.isEmpty()) {
+            if (emptyView != null) {
+                emptyView.setBounds(0, topPadding, getWidth(), emptyView.getPreferredSize().height);
+            }
+            return;
+        }
+        updateWindow(true);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).addChangeListener(viewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).removeChangeListener(viewportListener);
+        }
+        super.removeNotify();
+    }
+
+    /**
+     * Attach the rows in range of the viewport, detach the others and position them.
+     * Newly attached rows are always measured; remeasure also measures rows that
+     * stayed attached, since their contents or the width may have changed.
+     */
+    private void updateWindow(boolean remeasure) {
+        int width = getWidth();
+        if (updating || items.isEmpty() || width <= 0) {
+            return;
+        }
+        updating = true;
+        try {
+            Rectangle visible = getVisibleRect();
+            int anchorRow = rowAt(visible.y);
+            int anchorOffset = visible.y - rowTops[anchorRow];
+            int first = rowAt(visible.y - OVERSCAN);
+            int last = rowAt(visible.y + visible.height + OVERSCAN);
+
+            // Detach rows that left the range
+            Iterator<Map.Entry<Integer, JComponent>> iterator = shown.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Integer, JComponent> entry = iterator.next();
+                int row = entry.getKey();
+                if (row < first || row > last) {
+                    remove(entry.getValue());
+                    recycled.put(keyOf.apply(items.get(row)), entry.getValue());
+                    iterator.remove();
+                }
+            }
+
+            // Attach rows that entered it, measuring what is new or possibly changed
+            boolean resized = false;
+            for (int row = first; row <= last; row++) {
+                JComponent component = shown.get(row);
+                boolean attach = component == null;
+                if (attach) {
+                    String key = keyOf.apply(items.get(row));
+                    component = recycled.remove(key);
+                    if (component == null) {
+                        component = renderer.apply(items.get(row));
+                    }
+                    add(component);
+                    shown.put(row, component);
+                }
+                if (attach || remeasure) {
+                    int height = measure(component, width, heightOf(row));
+                    if (height != heightOf(row)) {
+                        heights.put(keyOf.apply(items.get(row)), height);
+                        resized = true;
+                    }
+                }
+            }
+
+            if (resized) {
+                updateOffsets();
+                // Keep the row at the top of the viewport where it was on screen
+                int anchorY = rowTops[anchorRow] + anchorOffset;
+                if (anchorY != visible.y && getParent() instanceof JViewport) {
+                    JViewport viewport = (JViewport) getParent();
+                    setSize(width, getPreferredSize().height);
+                    viewport.setViewPosition(new Point(viewport.getViewPosition().x, anchorY));
+                }
+                revalidate();
+            }
+            for (Map.Entry<Integer, JComponent> entry : shown.entrySet()) {
+                int row = entry.getKey();
+                entry.getValue().setBounds(0, rowTops[row], width, heightOf(row));
+                entry.getValue().validate();
+            }
+            repaint();
+        } finally {
+            updating = false;
+        }
+    }
+
+    // Helper: Preferred height of a component laid out at the given width
+    private static int measure(JComponent component, int width, int height) {
+        component.setBounds(0, 0, width, height);
+        invalidateTree(component);
+        component.validate();
+        // Wrapping text only knows its height once it has been laid out at the new width
+        invalidateTree(component);
+        return component.getPreferredSize().height;
+    }
+
+    private static void invalidateTree(Component component) {
+        component.invalidate();
+        if (component instanceof Container) {
+            for (Component child : ((Container) component).getComponents()) {
+                invalidateTree(child);
+            }
+        }
+    }
+
+    private int heightOf(int row) {
+        Integer height = heights.get(keyOf.apply(items.get(row)));
+        return height != null ? height : estimatedHeight;
+    }
+
+    private void updateOffsets() {
+        int count = items.size();
+        if (rowTops.length < count + 1) {
+            rowTops = new int[Math.max(count + 1, rowTops.length * 2)];
+        }
+        rowTops[0] = topPadding;
+        for (int row = 0; row < count; row++) {
+            rowTops[row + 1] = rowTops[row] + heightOf(row) + gap;
+        }
+    }
+
+    // Helper: Row at a y position (the first or last row when outside them)
+    private int rowAt(int y) {
+        int low = 0;
+        int high = items.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (rowTops[middle] <= y) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // ==================== SCROLLABLE ====================
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
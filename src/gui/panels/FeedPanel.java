@@ -1,25 +1,48 @@
 package gui.panels;
 
+import gui.ImageService;
 import gui.Theme;
 import gui.components.*;
 import models.*;
+import system.Page;
+import system.PageCursor;
 import system.SocialNetworkSystem;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.List;
-import javax.imageio.ImageIO;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * FeedPanel - Displays posts in a scrollable feed
  * Features like, comment, and delete interactions with animations
  */
 public class FeedPanel extends JPanel {
-    private JPanel feedContainer;
+    // Pages are fetched and likes and comments saved one at a time on a worker, so
+    // lazily loaded post bodies never load on the EDT
+    private static final ExecutorService FEED_WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "feed-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private VirtualList<FeedItem> feedList;
     private JScrollPane scrollPane;
     private SocialNetworkSystem system;
+    
+    // Paging state - more posts are fetched as the user scrolls down
+    private static final int PAGE_SIZE = 20;
+    private PageCursor nextCursor;
+    private int loadedCount;
+    private boolean loadingMore;
+    private int loadGeneration; // Bumped per reload on the EDT, older pages are dropped
+
+    // Height assumed for posts that have not been shown yet
+    private static final int ESTIMATED_CARD_HEIGHT = 320;
 
     public FeedPanel() {
         system = SocialNetworkSystem.getInstance();
@@ -30,45 +53,154 @@ public class FeedPanel extends JPanel {
     }
 
     private void initComponents() {
-        // Feed container
-        feedContainer = new JPanel();
-        feedContainer.setLayout(new BoxLayout(feedContainer, BoxLayout.Y_AXIS));
-        feedContainer.setOpaque(false); // Transparent to show gradient background
+        // Feed list - only the cards near the visible area are built
+        feedList = new VirtualList<>(item -> item.post.getId(), this::createPostCard, ESTIMATED_CARD_HEIGHT, 10, 20, 50);
+        feedList.setEmptyView(createEmptyState());
 
         // Scroll pane
-        scrollPane = new JScrollPane(feedContainer);
+        scrollPane = new JScrollPane(feedList);
         scrollPane.setBorder(null);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
         scrollPane.setOpaque(false); // Transparent
         scrollPane.getViewport().setOpaque(false); // Transparent
+        
+        // Fetch the next page when scrolled near the bottom
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            JScrollBar bar = scrollPane.getVerticalScrollBar();
+            if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 400) {
+                loadMorePosts();
+            }
+        });
 
         add(scrollPane, BorderLayout.CENTER);
     }
 
     public void loadPosts() {
-        feedContainer.removeAll();
-        feedContainer.add(Box.createVerticalStrut(10));
+        loadPosts(null);
+    }
+
+    // whenShown runs on the EDT once the reloaded posts are in the list
+    private void loadPosts(Runnable whenShown) {
+        // Reload as many posts as were showing so the scroll position stays valid
+        int count = Math.max(PAGE_SIZE, loadedCount);
+        int generation = ++loadGeneration;
+        loadingMore = true; // A page fetched meanwhile would be dropped anyway
+        FEED_WORKER.submit(() -> {
+            try {
+                Page<Post> page = system.getFeedPage(null, count);
+                List<FeedItem> items = prepareItems(page.getItems());
+                showWhenCurrent(generation, () -> {
+                    nextCursor = page.getNextCursor();
+                    loadedCount = items.size();
+
+                    // Cards are rebuilt for the new state, cached heights keep the offsets stable
+                    feedList.setItems(items);
+
+                    // Don't scroll to top - preserve current scroll position
+                    if (whenShown != null) {
+                        whenShown.run();
+                    }
+                });
+            } catch (Exception e) {
+                System.err.println("Error loading feed: " + e.getMessage());
+                showWhenCurrent(generation, () -> loadingMore = false);
+            }
+        });
+    }
+    
+    private void loadMorePosts() {
+        if (nextCursor == null || loadingMore) {
+            return;
+        }
+        loadingMore = true;
+        PageCursor cursor = nextCursor;
+        int generation = loadGeneration;
+        FEED_WORKER.submit(() -> {
+            try {
+                Page<Post> page = system.getFeedPage(cursor, PAGE_SIZE);
+                List<FeedItem> items = prepareItems(page.getItems());
+                showWhenCurrent(generation, () -> {
+                    nextCursor = page.getNextCursor();
+                    loadedCount += items.size();
+                    feedList.addItems(items);
+                });
+            } catch (Exception e) {
+                System.err.println("Error loading more posts: " + e.getMessage());
+                showWhenCurrent(generation, () -> loadingMore = false);
+            }
+        });
+    }
 
-        List<Post> posts = system.getFeedPosts();
+    // Worker: hand a page to the EDT, unless the feed has been reloaded meanwhile
+    private void showWhenCurrent(int generation, Runnable show) {
+        SwingUtilities.invokeLater(() -> {
+            if (generation == loadGeneration) {
+                show.run();
+                // Layout changes fire scroll events, so only allow the next fetch afterwards
+                SwingUtilities.invokeLater(() -> loadingMore = false);
+            }
+        });
+    }
 
-        if (posts.isEmpty()) {
-            JPanel emptyPanel = createEmptyState();
-            feedContainer.add(emptyPanel);
-        } else {
-            for (Post post : posts) {
-                JPanel postCard = createPostCard(post);
-                feedContainer.add(postCard);
-                feedContainer.add(Box.createVerticalStrut(20)); // More elegant spacing
+    // Worker: everything a card shows that lives in the post body is read here
+    private List<FeedItem> prepareItems(List<Post> posts) {
+        List<FeedItem> items = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            String imagePath = null;
+            String text;
+            if (post instanceof ImagePost) {
+                imagePath = ((ImagePost) post).getImagePath();
+                text = ((ImagePost) post).getCaption(); // Shown under the image
+            } else {
+                text = post.getDisplayContent();
             }
+            items.add(new FeedItem(post, system.getUserById(post.getAuthorId()), text, imagePath,
+                                   post.getLikeCount(), post.getCommentCount(), post.getComments(),
+                                   system.isPostLikedByCurrentUser(post.getId())));
         }
+        return items;
+    }
 
-        feedContainer.add(Box.createVerticalStrut(50));
-        feedContainer.revalidate();
-        feedContainer.repaint();
-        
-        // Don't scroll to top - preserve current scroll position
+    // Saves the change on the worker, then reloads the feed keeping the scroll position
+    private void updateAndReload(Runnable update) {
+        int scrollPosition = scrollPane.getVerticalScrollBar().getValue();
+        FEED_WORKER.submit(() -> {
+            try {
+                update.run();
+            } catch (Exception e) {
+                System.err.println("Error updating post: " + e.getMessage());
+            }
+        });
+        // Queued behind the update, so the reload sees it
+        loadPosts(() -> SwingUtilities.invokeLater(() -> scrollPane.getVerticalScrollBar().setValue(scrollPosition)));
+    }
+
+    /**
+     * FeedItem - A feed post with what its card shows, prepared on the worker
+     */
+    private static final class FeedItem {
+        final Post post;
+        final User author;
+        final String text;
+        final String imagePath;
+        final int likeCount;
+        final int commentCount;
+        final List<Comment> comments;
+        final boolean liked;
+
+        FeedItem(Post post, User author, String text, String imagePath, int likeCount, int commentCount,
+                 List<Comment> comments, boolean liked) {
+            this.post = post;
+            this.author = author;
+            this.text = text;
+            this.imagePath = imagePath;
+            this.likeCount = likeCount;
+            this.commentCount = commentCount;
+            this.comments = comments;
+            this.liked = liked;
+        }
     }
     
     public void scrollToTop() {
@@ -109,7 +241,8 @@ public class FeedPanel extends JPanel {
         return panel;
     }
 
-    private JPanel createPostCard(Post post) {
+    private JPanel createPostCard(FeedItem item) {
+        Post post = item.post;
         RoundedPanel card = new RoundedPanel(16, Theme.CARD_BACKGROUND, true);
         card.setLayout(new BorderLayout());
         card.setMaximumSize(new Dimension(Integer.MAX_VALUE, Integer.MAX_VALUE));
@@ -124,7 +257,7 @@ public class FeedPanel extends JPanel {
         authorPanel.setOpaque(false);
 
         // Avatar placeholder
-        User author = system.getUserById(post.getAuthorId());
+        User author = item.author;
         JLabel avatarLabel = createAvatar(author, 32);
         
         JPanel authorInfo = new JPanel();
@@ -165,16 +298,15 @@ public class FeedPanel extends JPanel {
 
         // Handle different post types
         if (post instanceof ImagePost) {
-            ImagePost imagePost = (ImagePost) post;
             // Display image
-            JLabel imageLabel = createImageLabel(imagePost.getImagePath());
+            JLabel imageLabel = createImageLabel(item.imagePath);
             if (imageLabel != null) {
                 contentPanel.add(imageLabel);
                 contentPanel.add(Box.createVerticalStrut(10));
             }
             // Display caption if exists
-            if (imagePost.hasCaption()) {
-                JTextArea captionText = new JTextArea(imagePost.getCaption());
+            if (item.text != null && !item.text.isEmpty()) {
+                JTextArea captionText = new JTextArea(item.text);
                 captionText.setFont(Theme.FONT_BODY);
                 captionText.setForeground(Theme.TEXT_PRIMARY);
                 captionText.setLineWrap(true);
@@ -187,7 +319,7 @@ public class FeedPanel extends JPanel {
             }
         } else {
             // Text post
-            JTextArea contentText = new JTextArea(post.getDisplayContent());
+            JTextArea contentText = new JTextArea(item.text);
             contentText.setFont(Theme.FONT_BODY);
             contentText.setForeground(Theme.TEXT_PRIMARY);
             contentText.setLineWrap(true);
@@ -206,8 +338,8 @@ public class FeedPanel extends JPanel {
             BorderFactory.createEmptyBorder(12, 0, 12, 0)
         ));
 
-        int likeCount = post.getLikeCount();
-        int commentCount = post.getCommentCount();
+        int likeCount = item.likeCount;
+        int commentCount = item.commentCount;
 
         if (likeCount > 0 || commentCount > 0) {
             StringBuilder stats = new StringBuilder();
@@ -229,21 +361,12 @@ public class FeedPanel extends JPanel {
         actionsPanel.setBorder(BorderFactory.createEmptyBorder(12, 0, 0, 0)); // No bottom padding
 
         // Like button
-        boolean isLiked = system.isPostLikedByCurrentUser(post.getId());
+        boolean isLiked = item.liked;
         JButton likeButton = createActionButton(
             isLiked ? "♥ Unlike" : "♡ Like",
             isLiked ? Theme.LIKE_RED : Theme.TEXT_SECONDARY
         );
-        likeButton.addActionListener(e -> {
-            // Save scroll position before refresh
-            int scrollPosition = scrollPane.getVerticalScrollBar().getValue();
-            system.likePost(post.getId());
-            loadPosts(); // Refresh to show updated state
-            // Restore scroll position after refresh
-            SwingUtilities.invokeLater(() -> {
-                scrollPane.getVerticalScrollBar().setValue(scrollPosition);
-            });
-        });
+        likeButton.addActionListener(e -> updateAndReload(() -> system.likePost(post.getId())));
         actionsPanel.add(likeButton);
 
         // Comment button (after like button)
@@ -299,7 +422,7 @@ public class FeedPanel extends JPanel {
         commentsContainer.setOpaque(false);
         commentsContainer.setAlignmentX(Component.RIGHT_ALIGNMENT);
 
-        List<Comment> comments = post.getComments();
+        List<Comment> comments = item.comments;
         if (!comments.isEmpty()) {
             // Initial collapsed view - show only 2 comments
             JPanel collapsedView = new JPanel();
@@ -309,7 +432,7 @@ public class FeedPanel extends JPanel {
             int displayCount = Math.min(2, comments.size());
             for (int i = 0; i < displayCount; i++) {
                 Comment comment = comments.get(i);
-                JPanel commentPanel = createCommentPanel(comment);
+                JPanel commentPanel = createCommentPanel(comment, post.getAuthorId());
                 collapsedView.add(commentPanel);
                 if (i < displayCount - 1) {
                     collapsedView.add(Box.createVerticalStrut(8));
@@ -326,21 +449,8 @@ public class FeedPanel extends JPanel {
                 toggleLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
                 toggleLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
                 
-                // Expanded view - all comments in scrollpane
-                JPanel expandedCommentsPanel = new JPanel();
-                expandedCommentsPanel.setLayout(new BoxLayout(expandedCommentsPanel, BoxLayout.Y_AXIS));
-                expandedCommentsPanel.setOpaque(false);
-                
-                for (int i = 0; i < comments.size(); i++) {
-                    Comment comment = comments.get(i);
-                    JPanel commentPanel = createCommentPanel(comment);
-                    expandedCommentsPanel.add(commentPanel);
-                    if (i < comments.size() - 1) {
-                        expandedCommentsPanel.add(Box.createVerticalStrut(8));
-                    }
-                }
-                
-                JScrollPane commentsScrollPane = new JScrollPane(expandedCommentsPanel);
+                // Expanded view - all comments in a scrollpane, built on first expand
+                JScrollPane commentsScrollPane = new JScrollPane();
                 commentsScrollPane.setBorder(BorderFactory.createLineBorder(Theme.BORDER_COLOR, 1));
                 commentsScrollPane.setOpaque(false);
                 commentsScrollPane.getViewport().setOpaque(false);
@@ -356,6 +466,9 @@ public class FeedPanel extends JPanel {
                     public void mouseClicked(java.awt.event.MouseEvent e) {
                         expanded = !expanded;
                         if (expanded) {
+                            if (commentsScrollPane.getViewport().getView() == null) {
+                                commentsScrollPane.setViewportView(createExpandedComments(comments, post.getAuthorId()));
+                            }
                             // Show all comments
                             collapsedView.setVisible(false);
                             commentsScrollPane.setVisible(true);
@@ -402,6 +515,22 @@ public class FeedPanel extends JPanel {
         return wrapper;
     }
 
+    private JPanel createExpandedComments(List<Comment> comments, String postAuthorId) {
+        JPanel expandedCommentsPanel = new JPanel();
+        expandedCommentsPanel.setLayout(new BoxLayout(expandedCommentsPanel, BoxLayout.Y_AXIS));
+        expandedCommentsPanel.setOpaque(false);
+        
+        for (int i = 0; i < comments.size(); i++) {
+            Comment comment = comments.get(i);
+            JPanel commentPanel = createCommentPanel(comment, postAuthorId);
+            expandedCommentsPanel.add(commentPanel);
+            if (i < comments.size() - 1) {
+                expandedCommentsPanel.add(Box.createVerticalStrut(8));
+            }
+        }
+        return expandedCommentsPanel;
+    }
+
     private JButton createActionButton(String text, Color textColor) {
         // Use HTML to render icons properly
         String htmlText = "<html>" + text + "</html>";
@@ -430,7 +559,7 @@ public class FeedPanel extends JPanel {
         return button;
     }
 
-    private JPanel createCommentPanel(Comment comment) {
+    private JPanel createCommentPanel(Comment comment, String postAuthorId) {
         JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
         panel.setOpaque(false);
         panel.setAlignmentX(Component.LEFT_ALIGNMENT); // Left align the comment panel
@@ -462,9 +591,7 @@ public class FeedPanel extends JPanel {
         
         // Add Report link (only if not own comment AND it's on current user's post)
         User currentUser = system.getCurrentUser();
-        Post parentPost = system.getPostById(comment.getPostId());
-        boolean isOwnPost = currentUser != null && parentPost != null && 
-                           parentPost.getAuthorId().equals(currentUser.getId());
+        boolean isOwnPost = currentUser != null && postAuthorId.equals(currentUser.getId());
         boolean isOwnComment = currentUser != null && comment.getAuthorId().equals(currentUser.getId());
         
         if (currentUser != null && isOwnPost && !isOwnComment) {
@@ -568,14 +695,7 @@ public class FeedPanel extends JPanel {
         );
 
         if (comment != null && !comment.trim().isEmpty()) {
-            // Save scroll position before refresh
-            int scrollPosition = scrollPane.getVerticalScrollBar().getValue();
-            system.addComment(post.getId(), comment.trim());
-            loadPosts();
-            // Restore scroll position after refresh
-            SwingUtilities.invokeLater(() -> {
-                scrollPane.getVerticalScrollBar().setValue(scrollPosition);
-            });
+            updateAndReload(() -> system.addComment(post.getId(), comment.trim()));
         }
     }
 
@@ -586,26 +706,17 @@ public class FeedPanel extends JPanel {
         avatarLabel.setHorizontalAlignment(SwingConstants.CENTER);
         avatarLabel.setVerticalAlignment(SwingConstants.CENTER);
         
-        // Try to load profile photo
+        // Emoji until the profile photo has loaded (or if there is none)
+        avatarLabel.setText("👤");
+        avatarLabel.setFont(new Font("Segoe UI Emoji", Font.PLAIN, size * 2 / 3));
         if (user != null && user.getProfilePhotoPath() != null && !user.getProfilePhotoPath().isEmpty()) {
-            try {
-                File imageFile = new File(user.getProfilePhotoPath());
-                if (imageFile.exists()) {
-                    BufferedImage img = javax.imageio.ImageIO.read(imageFile);
-                    if (img != null) {
-                        Image scaledImg = img.getScaledInstance(size, size, Image.SCALE_SMOOTH);
-                        avatarLabel.setIcon(new ImageIcon(scaledImg));
-                        return avatarLabel;
+            ImageService.getInstance().showIn(avatarLabel, user.getProfilePhotoPath(), ImageService.Size.square(size),
+                error -> {
+                    if (!(error instanceof FileNotFoundException)) { // A missing photo just keeps the emoji
+                        System.err.println("Error loading avatar: " + error.getMessage());
                     }
-                }
-            } catch (Exception e) {
-                System.err.println("Error loading avatar: " + e.getMessage());
-            }
+                });
         }
-        
-        // Fallback to emoji
-        avatarLabel.setText("👤");
-        avatarLabel.setFont(new Font("Segoe UI Emoji", Font.PLAIN, size * 2 / 3));
         return avatarLabel;
     }
     
@@ -614,57 +725,27 @@ public class FeedPanel extends JPanel {
             return null;
         }
         
-        try {
-            File imageFile = new File(imagePath);
-            if (!imageFile.exists()) {
-                // Try to show a placeholder or error message
-                JLabel errorLabel = new JLabel("📷 Image not found: " + imageFile.getName());
-                errorLabel.setFont(Theme.FONT_SMALL);
-                errorLabel.setForeground(Theme.TEXT_MUTED);
-                return errorLabel;
-            }
-            
-            // Load and resize image
-            BufferedImage originalImage = ImageIO.read(imageFile);
-            if (originalImage == null) {
-                JLabel errorLabel = new JLabel("📷 Unable to load image");
-                errorLabel.setFont(Theme.FONT_SMALL);
-                errorLabel.setForeground(Theme.TEXT_MUTED);
-                return errorLabel;
+        JLabel imageLabel = new JLabel("📷 Loading image...");
+        imageLabel.setFont(Theme.FONT_SMALL);
+        imageLabel.setForeground(Theme.TEXT_MUTED);
+        imageLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        imageLabel.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 0));
+        
+        // Max width 600px, maintaining aspect ratio, displayed at half the height
+        ImageService.getInstance().showIn(imageLabel, imagePath, ImageService.Size.maxWidth(600, 0.5), error -> {
+            String name = new File(imagePath).getName();
+            if (error instanceof FileNotFoundException) {
+                imageLabel.setText("📷 Image not found: " + name);
+            } else {
+                imageLabel.setText("📷 Error loading image: " + name);
             }
-            
-            // Calculate dimensions (max width 600px, maintain aspect ratio)
-            int maxWidth = 600;
-            int originalWidth = originalImage.getWidth();
-            int originalHeight = originalImage.getHeight();
-            
-            int displayWidth = Math.min(originalWidth, maxWidth);
-            int calculatedHeight = (int) ((double) displayWidth / originalWidth * originalHeight);
-            // Display at half the calculated height
-            int displayHeight = calculatedHeight / 2;
-            
-            // Scale image
-            Image scaledImage = originalImage.getScaledInstance(
-                displayWidth, displayHeight, Image.SCALE_SMOOTH);
-            
-            // Create label with image
-            JLabel imageLabel = new JLabel(new ImageIcon(scaledImage));
-            imageLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            imageLabel.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 0));
-            
-            return imageLabel;
-        } catch (Exception e) {
-            // If image loading fails, show error message
-            JLabel errorLabel = new JLabel("📷 Error loading image: " + new File(imagePath).getName());
-            errorLabel.setFont(Theme.FONT_SMALL);
-            errorLabel.setForeground(Theme.TEXT_MUTED);
-            return errorLabel;
-        }
+        });
+        return imageLabel;
     }
 
     public void refresh() {
-        loadPosts();
-        scrollToTop();
+        loadedCount = 0; // Start again from the first page
+        loadPosts(this::scrollToTop);
     }
 }
 
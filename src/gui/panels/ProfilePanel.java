@@ -1,15 +1,17 @@
 package gui.panels;
 
+import gui.ImageService;
 import gui.Theme;
 import gui.components.*;
 import models.*;
+import system.Page;
+import system.PageCursor;
 import system.SocialNetworkSystem;
 
 import javax.swing.*;
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.util.List;
 
 /**
@@ -20,6 +22,11 @@ public class ProfilePanel extends JPanel {
     private User displayedUser;
     private JPanel contentPanel;
     private JScrollPane scrollPane;
+    
+    // Paging state for the posts section
+    private static final int PAGE_SIZE = 20;
+    private PageCursor nextPostsCursor;
+    private boolean loadingMorePosts;
 
     public ProfilePanel() {
         system = SocialNetworkSystem.getInstance();
@@ -514,8 +521,10 @@ public class ProfilePanel extends JPanel {
         card.add(headerLabel);
         card.add(Box.createVerticalStrut(15));
 
-        // User's posts
-        List<Post> userPosts = system.getPostsByUser(displayedUser.getId());
+        // User's posts (first page, the rest is fetched while scrolling)
+        Page<Post> firstPage = system.getPostsByUserPage(displayedUser.getId(), null, PAGE_SIZE);
+        nextPostsCursor = firstPage.getNextCursor();
+        List<Post> userPosts = firstPage.getItems();
 
         if (userPosts.isEmpty()) {
             JPanel emptyPanel = new JPanel();
@@ -554,6 +563,14 @@ public class ProfilePanel extends JPanel {
             postsScroll.getViewport().setOpaque(false);
             postsScroll.setPreferredSize(new Dimension(550, 300));
             postsScroll.getVerticalScrollBar().setUnitIncrement(16);
+            
+            User postsOwner = displayedUser;
+            postsScroll.getVerticalScrollBar().addAdjustmentListener(e -> {
+                JScrollBar bar = postsScroll.getVerticalScrollBar();
+                if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 150) {
+                    loadMorePosts(postsOwner, postsContainer);
+                }
+            });
 
             card.add(postsScroll);
         }
@@ -561,6 +578,22 @@ public class ProfilePanel extends JPanel {
         return card;
     }
 
+    private void loadMorePosts(User owner, JPanel postsContainer) {
+        if (nextPostsCursor == null || loadingMorePosts || owner != displayedUser) {
+            return;
+        }
+        loadingMorePosts = true;
+        Page<Post> page = system.getPostsByUserPage(owner.getId(), nextPostsCursor, PAGE_SIZE);
+        nextPostsCursor = page.getNextCursor();
+        for (Post post : page.getItems()) {
+            postsContainer.add(createPostItem(post));
+            postsContainer.add(Box.createVerticalStrut(10));
+        }
+        postsContainer.revalidate();
+        postsContainer.repaint();
+        SwingUtilities.invokeLater(() -> loadingMorePosts = false);
+    }
+
     private JPanel createPostItem(Post post) {
         JPanel panel = new JPanel(new BorderLayout(10, 5));
         panel.setOpaque(false);
@@ -622,33 +655,18 @@ public class ProfilePanel extends JPanel {
         if (imagePath == null || imagePath.trim().isEmpty()) {
             return null;
         }
-        try {
-            File imageFile = new File(imagePath);
-            if (!imageFile.exists()) {
-                JLabel errorLabel = new JLabel("📷 " + imageFile.getName());
-                errorLabel.setFont(Theme.FONT_SMALL);
-                errorLabel.setForeground(Theme.TEXT_MUTED);
-                return errorLabel;
-            }
-            BufferedImage originalImage = ImageIO.read(imageFile);
-            if (originalImage == null) {
-                return new JLabel("📷 Unable to load image");
+        JLabel thumbnailLabel = new JLabel("📷 Loading...");
+        thumbnailLabel.setFont(Theme.FONT_SMALL);
+        thumbnailLabel.setForeground(Theme.TEXT_MUTED);
+        // Thumbnail (max 200px width)
+        ImageService.getInstance().showIn(thumbnailLabel, imagePath, ImageService.Size.maxWidth(200), error -> {
+            if (error instanceof FileNotFoundException) {
+                thumbnailLabel.setText("📷 " + new File(imagePath).getName());
+            } else {
+                thumbnailLabel.setText("📷 Error loading image");
             }
-            // Create thumbnail (max 200px width)
-            int maxWidth = 200;
-            int originalWidth = originalImage.getWidth();
-            int originalHeight = originalImage.getHeight();
-            int displayWidth = Math.min(originalWidth, maxWidth);
-            int displayHeight = (int) ((double) displayWidth / originalWidth * originalHeight);
-            
-            Image scaledImage = originalImage.getScaledInstance(displayWidth, displayHeight, Image.SCALE_SMOOTH);
-            return new JLabel(new ImageIcon(scaledImage));
-        } catch (Exception e) {
-            JLabel errorLabel = new JLabel("📷 Error loading image");
-            errorLabel.setFont(Theme.FONT_SMALL);
-            errorLabel.setForeground(Theme.TEXT_MUTED);
-            return errorLabel;
-        }
+        });
+        return thumbnailLabel;
     }
 
     private void showEditProfileDialog() {
@@ -676,9 +694,7 @@ public class ProfilePanel extends JPanel {
                 JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
 
         if (result == JOptionPane.OK_OPTION) {
-            displayedUser.setFullName(fullNameField.getText().trim());
-            displayedUser.setBio(bioField.getText().trim());
-            system.saveData(); // Save changes to disk
+            system.updateProfile(fullNameField.getText().trim(), bioField.getText().trim()); // Save changes to disk
             refreshProfile();
         }
     }
@@ -182,49 +182,19 @@ public class RegistrationPanel extends JPanel {
             return;
         }
 
-        if (username.contains(" ")) {
-            showError("Username cannot contain spaces");
-            return;
-        }
-
-        if (username.length() < 3) {
-            showError("Username must be at least 3 characters");
-            return;
-        }
-
-        // Email validation: alphanumeric before @, must be @gmail.com
-        if (!validateEmail(email)) {
-            showError("Invalid email address");
-            return;
-        }
-
-        // Check if email already exists
-        SocialNetworkSystem system = SocialNetworkSystem.getInstance();
-        if (system.isEmailTaken(email)) {
-            showError("Email already exists. Please use a different email.");
-            return;
-        }
-        
-        // Check if username already exists (before registration attempt)
-        if (system.getUserByUsername(username) != null) {
-            showError("Username already exists. Please choose a different username.");
-            return;
-        }
-
         int age;
         try {
             age = Integer.parseInt(ageStr);
-            if (age < 13 || age > 120) {
-                showError("Age must be between 13 and 120");
-                return;
-            }
         } catch (NumberFormatException e) {
             showError("Please enter a valid age");
             return;
         }
 
-        if (password.length() < 6) {
-            showError("Password must be at least 6 characters");
+        // The rules themselves are shared with the API server
+        SocialNetworkSystem system = SocialNetworkSystem.getInstance();
+        String problem = system.validateRegistration(username, password, fullName, email, age);
+        if (problem != null) {
+            showError(problem);
             return;
         }
 
@@ -250,30 +220,6 @@ public class RegistrationPanel extends JPanel {
         }
     }
 
-    private boolean validateEmail(String email) {
-        // Email must be in format: alphanumeric@gmail.com
-        if (!email.endsWith("@gmail.com")) {
-            return false;
-        }
-        
-        // Get the part before @gmail.com
-        String localPart = email.substring(0, email.indexOf("@"));
-        
-        // Check if local part is not empty and is alphanumeric
-        if (localPart.isEmpty()) {
-            return false;
-        }
-        
-        // Check if local part contains only alphanumeric characters
-        for (char c : localPart.toCharArray()) {
-            if (!Character.isLetterOrDigit(c)) {
-                return false;
-            }
-        }
-        
-        return true;
-    }
-    
     private void showError(String message) {
         errorLabel.setText(message);
     }
@@ -1,24 +1,45 @@
 package gui.panels;
 
+import gui.ImageService;
 import gui.Theme;
 import gui.components.*;
 import models.*;
 import system.SocialNetworkSystem;
 
 import javax.swing.*;
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * SearchPanel - Search for users with modern design
+ * SearchPanel - Search for users or post content with modern design
  */
 public class SearchPanel extends JPanel {
+    private static final int MAX_RESULTS = 50; // Cards shown per search
+    private static final String MODE_USERS = "Users";
+    private static final String MODE_POSTS = "Posts";
+    private static final int TYPING_DELAY_MS = 200; // Search once typing pauses this long
+
+    // Searches run one at a time on a worker, only the newest one is shown
+    private static final ExecutorService SEARCH_WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private SocialNetworkSystem system;
     private ModernTextField searchField;
+    private JComboBox<String> modeBox;
+    private Timer typingTimer;
+    private int searchGeneration; // Bumped per search on the EDT, older results are dropped
+    private Future<?> pendingSearch;
     private JPanel resultsPanel;
     private ProfilePanel profilePanel;
     private JScrollPane scrollPane;
@@ -42,16 +63,18 @@ public class SearchPanel extends JPanel {
             BorderFactory.createEmptyBorder(25, 35, 25, 35)
         ));
 
-        JLabel titleLabel = new JLabel("<html><span style='font-family:Segoe UI Emoji;font-size:20px;'>🔍</span> Search Users</html>");
+        JLabel titleLabel = new JLabel("<html><span style='font-family:Segoe UI Emoji;font-size:20px;'>🔍</span> Search</html>");
         titleLabel.setFont(Theme.FONT_HEADING);
         titleLabel.setForeground(Theme.TEXT_PRIMARY); // Dark text for light card
 
-        searchField = new ModernTextField("Search by name or username...");
+        searchField = new ModernTextField("Search by name, username or post text...");
         searchField.setPreferredSize(new Dimension(400, 44));
+        typingTimer = new Timer(TYPING_DELAY_MS, e -> performSearch());
+        typingTimer.setRepeats(false);
         searchField.addKeyListener(new KeyAdapter() {
             @Override
             public void keyReleased(KeyEvent e) {
-                performSearch();
+                typingTimer.restart(); // Debounce: wait for a pause in typing
             }
         });
 
@@ -59,8 +82,15 @@ public class SearchPanel extends JPanel {
         searchButton.setPreferredSize(new Dimension(100, 44));
         searchButton.addActionListener(e -> performSearch());
 
+        // Users or posts (text, captions and comments)
+        modeBox = new JComboBox<>(new String[] {MODE_USERS, MODE_POSTS});
+        modeBox.setFont(Theme.FONT_BODY);
+        modeBox.setPreferredSize(new Dimension(100, 44));
+        modeBox.addActionListener(e -> performSearch());
+
         JPanel searchRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
         searchRow.setOpaque(false);
+        searchRow.add(modeBox);
         searchRow.add(searchField);
         searchRow.add(searchButton);
 
@@ -104,26 +134,99 @@ public class SearchPanel extends JPanel {
         showAllUsers();
     }
     
+    /**
+     * Start a search for the current text and mode on the worker, dropping any older one
+     */
     private void performSearch() {
+        typingTimer.stop();
         String query = searchField.getText().trim();
-        
-        resultsPanel.removeAll();
-        resultsPanel.add(Box.createVerticalStrut(20));
+        boolean postMode = MODE_POSTS.equals(modeBox.getSelectedItem());
+        int generation = ++searchGeneration;
+        if (pendingSearch != null) {
+            pendingSearch.cancel(false); // Not started yet: never runs
+        }
+        pendingSearch = SEARCH_WORKER.submit(() -> {
+            try {
+                if (postMode) {
+                    List<PostResult> results = findPosts(query);
+                    showWhenCurrent(generation, () -> showPostResults(query, results));
+                } else {
+                    List<User> results = findUsers(query);
+                    showWhenCurrent(generation, () -> showUserResults(results));
+                }
+            } catch (Exception e) {
+                System.err.println("Search failed: " + e.getMessage());
+            }
+        });
+    }
 
+    // Worker: one extra result tells whether there are more than we show
+    private List<User> findUsers(String query) {
         List<User> results;
         if (query.isEmpty()) {
-            results = system.getAllUsers();
+            List<User> all = system.getAllUsers();
+            results = new ArrayList<>(all.subList(0, Math.min(all.size(), MAX_RESULTS + 1)));
         } else {
-            results = system.searchUsers(query);
+            results = system.searchUsers(query, MAX_RESULTS + 1);
+        }
+        List<CompletableFuture<?>> avatars = new ArrayList<>();
+        for (User user : results) {
+            avatars.add(prefetchAvatar(user, 50));
+        }
+        awaitAvatars(avatars);
+        return results;
+    }
+
+    // Worker: post text is read here too, so lazily loaded bodies never load on the EDT
+    private List<PostResult> findPosts(String query) {
+        List<PostResult> results = new ArrayList<>();
+        if (query.isEmpty()) {
+            return results;
+        }
+        List<CompletableFuture<?>> avatars = new ArrayList<>();
+        for (Post post : system.searchPosts(query, MAX_RESULTS)) {
+            String text = post instanceof ImagePost ? ((ImagePost) post).getCaption() : post.getContent();
+            if (text == null || text.isEmpty()) {
+                text = "[Image]";
+            }
+            text = text.replace('\n', ' ');
+            if (text.length() > 60) {
+                text = text.substring(0, 60) + "...";
+            }
+            User author = system.getUserById(post.getAuthorId());
+            avatars.add(prefetchAvatar(author, 40));
+            results.add(new PostResult(post, author, text, post.getLikeCount(), post.getCommentCount()));
+        }
+        awaitAvatars(avatars);
+        return results;
+    }
+
+    // Worker: hand results to the EDT, unless a newer search has started meanwhile
+    private void showWhenCurrent(int generation, Runnable show) {
+        SwingUtilities.invokeLater(() -> {
+            if (generation == searchGeneration) {
+                show.run();
+            }
+        });
+    }
+
+    private void showUserResults(List<User> results) {
+        resultsPanel.removeAll();
+        resultsPanel.add(Box.createVerticalStrut(20));
+
+        boolean more = results.size() > MAX_RESULTS;
+        if (more) {
+            results = results.subList(0, MAX_RESULTS);
         }
 
         if (results.isEmpty()) {
-            showNoResults();
+            showNoResults("No users found");
         } else {
             JPanel headerWrapper = new JPanel(new FlowLayout(FlowLayout.CENTER));
             headerWrapper.setOpaque(false);
             
-            JLabel resultCount = new JLabel(results.size() + " user(s) found");
+            JLabel resultCount = new JLabel(more ? "Showing the first " + MAX_RESULTS + " users, refine your search for more"
+                                                 : results.size() + " user(s) found");
             resultCount.setFont(Theme.FONT_BODY);
             resultCount.setForeground(Theme.TEXT_PRIMARY); // Dark text for light background
             headerWrapper.add(resultCount);
@@ -140,6 +243,59 @@ public class SearchPanel extends JPanel {
             }
         }
 
+        finishResults();
+    }
+
+    private void showPostResults(String query, List<PostResult> results) {
+        resultsPanel.removeAll();
+        resultsPanel.add(Box.createVerticalStrut(20));
+
+        if (results.isEmpty()) {
+            showNoResults(query.isEmpty() ? "Type words to search posts and comments" : "No posts found");
+        } else {
+            JPanel headerWrapper = new JPanel(new FlowLayout(FlowLayout.CENTER));
+            headerWrapper.setOpaque(false);
+
+            JLabel resultCount = new JLabel(results.size() == MAX_RESULTS ? "Top " + MAX_RESULTS + " posts"
+                                                                          : results.size() + " post(s) found");
+            resultCount.setFont(Theme.FONT_BODY);
+            resultCount.setForeground(Theme.TEXT_PRIMARY);
+            headerWrapper.add(resultCount);
+            resultsPanel.add(headerWrapper);
+            resultsPanel.add(Box.createVerticalStrut(15));
+
+            for (PostResult result : results) {
+                JPanel wrapper = new JPanel(new FlowLayout(FlowLayout.CENTER));
+                wrapper.setOpaque(false);
+                wrapper.add(createPostResultCard(result));
+                resultsPanel.add(wrapper);
+                resultsPanel.add(Box.createVerticalStrut(15));
+            }
+        }
+
+        finishResults();
+    }
+
+    /**
+     * PostResult - A matching post with what its card shows, prepared on the worker
+     */
+    private static final class PostResult {
+        final Post post;
+        final User author;
+        final String snippet;
+        final int likeCount;
+        final int commentCount;
+
+        PostResult(Post post, User author, String snippet, int likeCount, int commentCount) {
+            this.post = post;
+            this.author = author;
+            this.snippet = snippet;
+            this.likeCount = likeCount;
+            this.commentCount = commentCount;
+        }
+    }
+
+    private void finishResults() {
         resultsPanel.add(Box.createVerticalStrut(50));
         resultsPanel.revalidate();
         resultsPanel.repaint();
@@ -161,7 +317,7 @@ public class SearchPanel extends JPanel {
         performSearch(); // With empty query shows all
     }
 
-    private void showNoResults() {
+    private void showNoResults(String message) {
         JPanel panel = new JPanel();
         panel.setOpaque(false);
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
@@ -171,7 +327,7 @@ public class SearchPanel extends JPanel {
         iconLabel.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 64));
         iconLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
 
-        JLabel textLabel = new JLabel("No users found");
+        JLabel textLabel = new JLabel(message);
         textLabel.setFont(Theme.FONT_HEADING);
         textLabel.setForeground(Theme.TEXT_PRIMARY); // Dark text for light background
         textLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -284,17 +440,7 @@ public class SearchPanel extends JPanel {
         card.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                if (profilePanel != null) {
-                    profilePanel.loadUserProfile(user);
-                    // Find parent and switch to profile panel
-                    Container parent = getParent();
-                    while (parent != null && !(parent instanceof MainAppPanel)) {
-                        parent = parent.getParent();
-                    }
-                    if (parent instanceof MainAppPanel) {
-                        ((MainAppPanel) parent).showPanel("profile");
-                    }
-                }
+                openProfile(user);
             }
 
             @Override
@@ -311,6 +457,86 @@ public class SearchPanel extends JPanel {
         return card;
     }
 
+    private JPanel createPostResultCard(PostResult result) {
+        Post post = result.post;
+        RoundedPanel card = new RoundedPanel(16, Theme.CARD_BACKGROUND, true);
+        card.setLayout(new BorderLayout(15, 0));
+        card.setPreferredSize(new Dimension(520, 110));
+        card.setCursor(new Cursor(Cursor.HAND_CURSOR));
+
+        User author = result.author;
+        JLabel avatarLabel = createAvatar(author, 40);
+        avatarLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+
+        JPanel infoPanel = new JPanel();
+        infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
+        infoPanel.setOpaque(false);
+
+        JLabel nameLabel = new JLabel(post.getAuthorFullName());
+        nameLabel.setFont(Theme.FONT_SUBHEADING);
+        nameLabel.setForeground(Theme.TEXT_PRIMARY);
+
+        JLabel timeLabel = new JLabel(post.getRelativeTime() + " • " + post.getPostType());
+        timeLabel.setFont(Theme.FONT_SMALL);
+        timeLabel.setForeground(Theme.TEXT_MUTED);
+
+        // Text posts show their text, image posts their caption
+        JLabel textLabel = new JLabel(result.snippet);
+        textLabel.setFont(Theme.FONT_BODY);
+        textLabel.setForeground(Theme.TEXT_SECONDARY);
+
+        infoPanel.add(nameLabel);
+        infoPanel.add(Box.createVerticalStrut(2));
+        infoPanel.add(timeLabel);
+        infoPanel.add(Box.createVerticalStrut(3));
+        infoPanel.add(textLabel);
+
+        JPanel statsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 15, 0));
+        statsPanel.setOpaque(false);
+        statsPanel.add(createMiniStat(String.valueOf(result.likeCount), "likes"));
+        statsPanel.add(createMiniStat(String.valueOf(result.commentCount), "comments"));
+
+        card.add(avatarLabel, BorderLayout.WEST);
+        card.add(infoPanel, BorderLayout.CENTER);
+        card.add(statsPanel, BorderLayout.EAST);
+
+        // Click to view the author's profile
+        card.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (author != null) {
+                    openProfile(author);
+                }
+            }
+
+            @Override
+            public void mouseEntered(MouseEvent e) {
+                card.setBackgroundColor(new Color(0xFF, 0xF5, 0xF0));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                card.setBackgroundColor(Theme.CARD_BACKGROUND);
+            }
+        });
+
+        return card;
+    }
+
+    private void openProfile(User user) {
+        if (profilePanel != null) {
+            profilePanel.loadUserProfile(user);
+            // Find parent and switch to profile panel
+            Container parent = getParent();
+            while (parent != null && !(parent instanceof MainAppPanel)) {
+                parent = parent.getParent();
+            }
+            if (parent instanceof MainAppPanel) {
+                ((MainAppPanel) parent).showPanel("profile");
+            }
+        }
+    }
+
     private JLabel createAvatar(User user, int size) {
         JLabel avatarLabel = new JLabel();
         avatarLabel.setPreferredSize(new Dimension(size, size));
@@ -318,29 +544,41 @@ public class SearchPanel extends JPanel {
         avatarLabel.setHorizontalAlignment(SwingConstants.CENTER);
         avatarLabel.setVerticalAlignment(SwingConstants.CENTER);
         
-        // Try to load profile photo
-        if (user != null && user.getProfilePhotoPath() != null && !user.getProfilePhotoPath().isEmpty()) {
-            try {
-                File imageFile = new File(user.getProfilePhotoPath());
-                if (imageFile.exists()) {
-                    BufferedImage img = ImageIO.read(imageFile);
-                    if (img != null) {
-                        Image scaledImg = img.getScaledInstance(size, size, Image.SCALE_SMOOTH);
-                        avatarLabel.setIcon(new ImageIcon(scaledImg));
-                        return avatarLabel;
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("Error loading avatar: " + e.getMessage());
-            }
-        }
-        
-        // Fallback to emoji
+        // Emoji until the profile photo is shown (normally already loaded by the search worker)
         avatarLabel.setText("👤");
         avatarLabel.setFont(new Font("Segoe UI Emoji", Font.PLAIN, size * 2 / 3));
+        if (hasPhoto(user)) {
+            ImageService.getInstance().showIn(avatarLabel, user.getProfilePhotoPath(), ImageService.Size.square(size),
+                error -> {
+                    if (!(error instanceof FileNotFoundException)) { // A missing photo just keeps the emoji
+                        System.err.println("Error loading avatar: " + error.getMessage());
+                    }
+                });
+        }
         return avatarLabel;
     }
     
+    private static boolean hasPhoto(User user) {
+        return user != null && user.getProfilePhotoPath() != null && !user.getProfilePhotoPath().isEmpty();
+    }
+    
+    // Worker: start loading an avatar so the result cards can show it at once
+    private static CompletableFuture<?> prefetchAvatar(User user, int size) {
+        if (!hasPhoto(user)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return ImageService.getInstance().load(user.getProfilePhotoPath(), ImageService.Size.square(size));
+    }
+    
+    // Worker: wait for the avatars being loaded (failures leave the emoji, reported by the card)
+    private static void awaitAvatars(List<CompletableFuture<?>> avatars) {
+        try {
+            CompletableFuture.allOf(avatars.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // At least one avatar failed
+        }
+    }
+
     private JPanel createMiniStat(String value, String label) {
         JPanel panel = new JPanel();
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
@@ -1,33 +1,64 @@
 package models;
 
-import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.List;
 
 public class Admin extends User {
     private static final long serialVersionUID = 1L;
-    private List<String> bannedUserIds;
+    private IntSet bannedUserIds;
+
+    // Java serialization form (legacy data files)
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("bannedUserIds", List.class)
+    };
 
     public Admin(String id, String username, String password, String fullName, String email, int age) {
         super(id, username, password, fullName, email, age);
-        this.bannedUserIds = new ArrayList<>();
+        this.bannedUserIds = new IntSet();
+    }
+    
+    public Admin(DataInputStream in, int version) throws IOException {
+        super(in, version);
+        this.bannedUserIds = BinaryIO.readIdSet(in, version, Ids.USERS);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        super.writeTo(out);
+        BinaryIO.writeIdSet(out, bannedUserIds, Ids.USERS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.bannedUserIds = BinaryIO.toIdSet((List<String>) fields.get("bannedUserIds", null), Ids.USERS);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("bannedUserIds", BinaryIO.toStringList(bannedUserIds, Ids.USERS));
+        out.writeFields();
     }
     
     public void banUser(String userId) {
-        if (!bannedUserIds.contains(userId)) {
-            bannedUserIds.add(userId);
-        }
+        bannedUserIds.add(Ids.USERS.toInt(userId));
     }
     
     public void unbanUser(String userId) {
-        bannedUserIds.remove(userId);
+        bannedUserIds.remove(Ids.USERS.lookup(userId));
     }
     
     public boolean isUserBanned(String userId) {
-        return bannedUserIds.contains(userId);
+        return bannedUserIds.contains(Ids.USERS.lookup(userId));
     }
     
     public List<String> getBannedUserIds() {
-        return new ArrayList<>(bannedUserIds);
+        return new IdListView(bannedUserIds, Ids.USERS); // Read-only live view
     }
 
     @Override
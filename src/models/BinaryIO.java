@@ -0,0 +1,165 @@
+package models;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BinaryIO - Field helpers for the compact binary data format
+ * Models use these in their writeTo methods and reading constructors.
+ */
+public final class BinaryIO {
+    private static final int MAX_STRING_BYTES = 16 * 1024 * 1024; // Guards against corrupt lengths
+
+    private BinaryIO() {}
+
+    // Nullable string: length (-1 for null) followed by UTF-8 bytes
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("Corrupt string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeStringList(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    public static ArrayList<String> readStringList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Corrupt list size: " + size);
+        }
+        ArrayList<String> values = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    // Id set (version 2+): size, then per id its number, or -1 followed by the string for other ids
+    public static void writeIdSet(DataOutputStream out, IntSet ids, Ids mapping) throws IOException {
+        out.writeInt(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            if (id >= 0) {
+                out.writeInt(id);
+            } else {
+                out.writeInt(-1);
+                writeString(out, mapping.toString(id));
+            }
+        }
+    }
+
+    // Reads id sets from any version (version 1 stored them as string lists)
+    public static IntSet readIdSet(DataInputStream in, int version, Ids mapping) throws IOException {
+        if (version < 2) {
+            return toIdSet(readStringList(in), mapping);
+        }
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Corrupt id set size: " + size);
+        }
+        IntSet ids = new IntSet(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            int id = in.readInt();
+            ids.add(id >= 0 ? id : mapping.toInt(readString(in)));
+        }
+        return ids;
+    }
+
+    // Id bitmap (version 3+): its containers, then the count and strings of non-canonical ids
+    public static void writeBitmap(DataOutputStream out, IdBitmap ids, Ids mapping) throws IOException {
+        ids.writeContainers(out);
+        int[] others = ids.negativeIds();
+        out.writeInt(others.length);
+        for (int id : others) {
+            writeString(out, mapping.toString(id));
+        }
+    }
+
+    // Reads id bitmaps from any version (earlier versions stored id sets)
+    public static IdBitmap readBitmap(DataInputStream in, int version, Ids mapping) throws IOException {
+        IdBitmap ids = new IdBitmap();
+        if (version < 3) {
+            IntSet stored = readIdSet(in, version, mapping);
+            for (int i = 0; i < stored.size(); i++) {
+                ids.add(stored.get(i));
+            }
+            return ids;
+        }
+        ids.readContainers(in);
+        int others = in.readInt();
+        if (others < 0) {
+            throw new IOException("Corrupt id count: " + others);
+        }
+        for (int i = 0; i < others; i++) {
+            ids.add(mapping.toInt(readString(in)));
+        }
+        return ids;
+    }
+
+    // Conversions at the API boundary, where ids are still strings
+    public static IntSet toIdSet(List<String> values, Ids mapping) {
+        IntSet ids = new IntSet(Math.max(4, values == null ? 0 : values.size()));
+        if (values != null) {
+            for (String value : values) {
+                if (value != null) {
+                    ids.add(mapping.toInt(value));
+                }
+            }
+        }
+        return ids;
+    }
+
+    public static IdBitmap toBitmap(List<String> values, Ids mapping) {
+        IdBitmap ids = new IdBitmap();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null) {
+                    ids.add(mapping.toInt(value));
+                }
+            }
+        }
+        return ids;
+    }
+
+    public static ArrayList<String> toStringList(IdBitmap ids, Ids mapping) {
+        int[] values = ids.toArray();
+        ArrayList<String> names = new ArrayList<>(values.length);
+        for (int id : values) {
+            names.add(mapping.toString(id));
+        }
+        return names;
+    }
+
+    public static ArrayList<String> toStringList(IntSet ids, Ids mapping) {
+        ArrayList<String> values = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            values.add(mapping.toString(ids.get(i)));
+        }
+        return values;
+    }
+}
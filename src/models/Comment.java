@@ -1,7 +1,14 @@
 package models;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Comment class - Represents a comment on a post
@@ -15,7 +22,19 @@ public class Comment implements Serializable {
     private String authorFullName;
     private String content;
     private long timestamp;
-    private ArrayList<String> likedByUserIds;
+    private IdBitmap likedByUserIds; // Compact user ids (see Ids)
+
+    // Java serialization form (legacy data files): likes were a string list
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("postId", String.class),
+        new ObjectStreamField("authorId", String.class),
+        new ObjectStreamField("authorUsername", String.class),
+        new ObjectStreamField("authorFullName", String.class),
+        new ObjectStreamField("content", String.class),
+        new ObjectStreamField("timestamp", long.class),
+        new ObjectStreamField("likedByUserIds", ArrayList.class)
+    };
 
     public Comment(String id, String postId, String authorId, String authorUsername, 
                    String authorFullName, String content) {
@@ -26,7 +45,55 @@ public class Comment implements Serializable {
         this.authorFullName = authorFullName;
         this.content = content;
         this.timestamp = System.currentTimeMillis();
-        this.likedByUserIds = new ArrayList<>();
+        this.likedByUserIds = new IdBitmap();
+    }
+
+    public Comment(DataInputStream in, int version) throws IOException {
+        this.id = BinaryIO.readString(in);
+        this.postId = BinaryIO.readString(in);
+        this.authorId = BinaryIO.readString(in);
+        this.authorUsername = BinaryIO.readString(in);
+        this.authorFullName = BinaryIO.readString(in);
+        this.content = BinaryIO.readString(in);
+        this.timestamp = in.readLong();
+        this.likedByUserIds = BinaryIO.readBitmap(in, version, Ids.USERS);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        BinaryIO.writeString(out, id);
+        BinaryIO.writeString(out, postId);
+        BinaryIO.writeString(out, authorId);
+        BinaryIO.writeString(out, authorUsername);
+        BinaryIO.writeString(out, authorFullName);
+        BinaryIO.writeString(out, content);
+        out.writeLong(timestamp);
+        BinaryIO.writeBitmap(out, likedByUserIds, Ids.USERS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.id = (String) fields.get("id", null);
+        this.postId = (String) fields.get("postId", null);
+        this.authorId = (String) fields.get("authorId", null);
+        this.authorUsername = (String) fields.get("authorUsername", null);
+        this.authorFullName = (String) fields.get("authorFullName", null);
+        this.content = (String) fields.get("content", null);
+        this.timestamp = fields.get("timestamp", 0L);
+        this.likedByUserIds = BinaryIO.toBitmap((List<String>) fields.get("likedByUserIds", null), Ids.USERS);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("postId", postId);
+        fields.put("authorId", authorId);
+        fields.put("authorUsername", authorUsername);
+        fields.put("authorFullName", authorFullName);
+        fields.put("content", content);
+        fields.put("timestamp", timestamp);
+        fields.put("likedByUserIds", BinaryIO.toStringList(likedByUserIds, Ids.USERS));
+        out.writeFields();
     }
 
     // Getters
@@ -56,17 +123,22 @@ public class Comment implements Serializable {
 
     // Like functionality
     public void addLike(String userId) {
-        if (!likedByUserIds.contains(userId)) {
-            likedByUserIds.add(userId);
-        }
+        likedByUserIds.add(Ids.USERS.toInt(userId));
     }
 
     public void removeLike(String userId) {
-        likedByUserIds.remove(userId);
+        likedByUserIds.remove(Ids.USERS.lookup(userId));
+    }
+
+    /**
+     * Like if not yet liked, otherwise unlike, returns true if the comment is now liked
+     */
+    public boolean toggleLike(String userId) {
+        return likedByUserIds.toggle(Ids.USERS.toInt(userId));
     }
 
     public boolean isLikedBy(String userId) {
-        return likedByUserIds.contains(userId);
+        return likedByUserIds.contains(Ids.USERS.lookup(userId));
     }
 
     public int getLikeCount() {
@@ -1,5 +1,8 @@
 package models;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -37,6 +40,34 @@ public class CommentReport implements Serializable {
         this.resolved = false;
     }
     
+    public CommentReport(DataInputStream in, int version) throws IOException {
+        this.reportId = BinaryIO.readString(in);
+        this.commentId = BinaryIO.readString(in);
+        this.postId = BinaryIO.readString(in);
+        this.reporterId = BinaryIO.readString(in);
+        this.reporterUsername = BinaryIO.readString(in);
+        this.commentAuthorId = BinaryIO.readString(in);
+        this.commentAuthorUsername = BinaryIO.readString(in);
+        this.commentContent = BinaryIO.readString(in);
+        this.reason = BinaryIO.readString(in);
+        this.timestamp = in.readLong();
+        this.resolved = in.readBoolean();
+    }
+    
+    public void writeTo(DataOutputStream out) throws IOException {
+        BinaryIO.writeString(out, reportId);
+        BinaryIO.writeString(out, commentId);
+        BinaryIO.writeString(out, postId);
+        BinaryIO.writeString(out, reporterId);
+        BinaryIO.writeString(out, reporterUsername);
+        BinaryIO.writeString(out, commentAuthorId);
+        BinaryIO.writeString(out, commentAuthorUsername);
+        BinaryIO.writeString(out, commentContent);
+        BinaryIO.writeString(out, reason);
+        out.writeLong(timestamp);
+        out.writeBoolean(resolved);
+    }
+    
     // Getters
     public String getReportId() { return reportId; }
     public String getCommentId() { return commentId; }
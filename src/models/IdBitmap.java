@@ -0,0 +1,328 @@
+package models;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * IdBitmap - Compressed bitmap of int ids (Roaring-style)
+ * Ids are split into a 16-bit high key and a 16-bit low part. Each key that has ids
+ * gets a container: a sorted char array while it holds up to ARRAY_LIMIT ids, a
+ * 65536-bit bitmap beyond that. Dense user ids all share a few containers, so
+ * membership and toggling are a key lookup plus an array search or a bit test,
+ * and the count is kept up to date instead of being recounted.
+ * Ids are ordered as unsigned ints, so negative (interned) ids come last.
+ */
+public final class IdBitmap {
+    private static final int ARRAY_LIMIT = 4096; // Above this a bitmap (8 KB) is smaller than the array
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+
+    /**
+     * Container - Low 16 bits of the ids sharing one high key
+     */
+    private static final class Container {
+        char[] values; // Sorted, null once converted to bits
+        long[] bits;
+        int cardinality;
+
+        Container(int capacity) {
+            values = new char[capacity];
+        }
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bits[low >>> 6] |= mask;
+                cardinality++;
+                return true;
+            }
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                toBits();
+                return add(low);
+            }
+            position = -position - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) == 0) {
+                    return false;
+                }
+                bits[low >>> 6] &= ~mask;
+                cardinality--;
+                if (cardinality <= ARRAY_LIMIT / 2) {
+                    toValues(); // Hysteresis, so toggling at the limit does not convert every time
+                }
+                return true;
+            }
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+            cardinality--;
+            return true;
+        }
+
+        private void toBits() {
+            bits = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void toValues() {
+            char[] sorted = new char[Math.max(4, cardinality)];
+            int count = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long remaining = bits[word];
+                while (remaining != 0) {
+                    sorted[count++] = (char) (word * 64 + Long.numberOfTrailingZeros(remaining));
+                    remaining &= remaining - 1;
+                }
+            }
+            values = sorted;
+            bits = null;
+        }
+
+        // Low parts in order, written into out starting at offset (returns the next offset)
+        int copyTo(int high, int[] out, int offset) {
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    out[offset++] = high | values[i];
+                }
+                return offset;
+            }
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long remaining = bits[word];
+                while (remaining != 0) {
+                    out[offset++] = high | (word * 64 + Long.numberOfTrailingZeros(remaining));
+                    remaining &= remaining - 1;
+                }
+            }
+            return offset;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        int position = Arrays.binarySearch(keys, high(id));
+        return position >= 0 && containers[position].contains((char) id);
+    }
+
+    /**
+     * Add an id, returns false if it was already present
+     */
+    public boolean add(int id) {
+        char key = high(id);
+        int position = Arrays.binarySearch(keys, key);
+        if (position < 0) {
+            position = -position - 1;
+            insertContainer(position, key);
+        }
+        if (containers[position].add((char) id)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove an id, returns false if it was not present
+     */
+    public boolean remove(int id) {
+        int position = Arrays.binarySearch(keys, high(id));
+        if (position < 0 || !containers[position].remove((char) id)) {
+            return false;
+        }
+        size--;
+        if (containers[position].cardinality == 0) {
+            removeContainer(position);
+        }
+        return true;
+    }
+
+    /**
+     * Add the id if absent, remove it if present, returns true if it is now present
+     */
+    public boolean toggle(int id) {
+        if (remove(id)) {
+            return false;
+        }
+        add(id);
+        return true;
+    }
+
+    public void clear() {
+        keys = new char[0];
+        containers = new Container[0];
+        size = 0;
+    }
+
+    /**
+     * All ids, in unsigned order
+     */
+    public int[] toArray() {
+        int[] ids = new int[size];
+        int offset = 0;
+        for (int i = 0; i < keys.length; i++) {
+            offset = containers[i].copyTo(keys[i] << 16, ids, offset);
+        }
+        return ids;
+    }
+
+    // ==================== ENCODING ====================
+
+    /**
+     * Write the ids below 2^31 as containers, the rest through writeOther
+     * Layout: container count, then per container its key, cardinality - 1 and
+     * either the sorted low parts (up to ARRAY_LIMIT) or the 1024 bitmap words.
+     */
+    void writeContainers(DataOutputStream out) throws IOException {
+        int count = 0;
+        while (count < keys.length && keys[count] < 0x8000) {
+            count++;
+        }
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            Container container = containers[i];
+            out.writeChar(keys[i]);
+            out.writeChar(container.cardinality - 1);
+            if (container.cardinality <= ARRAY_LIMIT) {
+                int[] lows = new int[container.cardinality];
+                container.copyTo(0, lows, 0);
+                for (int low : lows) {
+                    out.writeChar(low);
+                }
+            } else {
+                for (long word : container.bits) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    // Ids at or above 2^31 as unsigned, i.e. the negative ones, in order
+    int[] negativeIds() {
+        int first = 0;
+        while (first < keys.length && keys[first] < 0x8000) {
+            first++;
+        }
+        int count = 0;
+        for (int i = first; i < keys.length; i++) {
+            count += containers[i].cardinality;
+        }
+        int[] ids = new int[count];
+        int offset = 0;
+        for (int i = first; i < keys.length; i++) {
+            offset = containers[i].copyTo(keys[i] << 16, ids, offset);
+        }
+        return ids;
+    }
+
+    void readContainers(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > 0x8000) {
+            throw new IOException("Corrupt bitmap container count: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            int key = in.readChar();
+            int cardinality = in.readChar() + 1;
+            if (key >= 0x8000 || (keys.length > 0 && key <= keys[keys.length - 1])) {
+                throw new IOException("Corrupt bitmap container key: " + key);
+            }
+            insertContainer(keys.length, (char) key);
+            Container container = containers[keys.length - 1];
+            if (cardinality <= ARRAY_LIMIT) {
+                char[] values = new char[cardinality];
+                for (int j = 0; j < cardinality; j++) {
+                    values[j] = in.readChar();
+                    if (j > 0 && values[j] <= values[j - 1]) {
+                        throw new IOException("Corrupt bitmap container values");
+                    }
+                }
+                container.values = values;
+            } else {
+                long[] bits = new long[BITMAP_WORDS];
+                int bitCount = 0;
+                for (int j = 0; j < BITMAP_WORDS; j++) {
+                    bits[j] = in.readLong();
+                    bitCount += Long.bitCount(bits[j]);
+                }
+                if (bitCount != cardinality) {
+                    throw new IOException("Corrupt bitmap container cardinality");
+                }
+                container.values = null;
+                container.bits = bits;
+            }
+            container.cardinality = cardinality;
+            size += cardinality;
+        }
+    }
+
+    // Helper: High 16 bits as the container key
+    private static char high(int id) {
+        return (char) (id >>> 16);
+    }
+
+    private void insertContainer(int position, char key) {
+        int length = keys.length;
+        char[] newKeys = new char[length + 1];
+        Container[] newContainers = new Container[length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, position);
+        System.arraycopy(containers, 0, newContainers, 0, position);
+        System.arraycopy(keys, position, newKeys, position + 1, length - position);
+        System.arraycopy(containers, position, newContainers, position + 1, length - position);
+        newKeys[position] = key;
+        newContainers[position] = new Container(4);
+        keys = newKeys;
+        containers = newContainers;
+    }
+
+    private void removeContainer(int position) {
+        int length = keys.length;
+        char[] newKeys = new char[length - 1];
+        Container[] newContainers = new Container[length - 1];
+        System.arraycopy(keys, 0, newKeys, 0, position);
+        System.arraycopy(containers, 0, newContainers, 0, position);
+        System.arraycopy(keys, position + 1, newKeys, position, length - position - 1);
+        System.arraycopy(containers, position + 1, newContainers, position, length - position - 1);
+        keys = newKeys;
+        containers = newContainers;
+    }
+}
@@ -0,0 +1,73 @@
+package models;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * IdListView - Read-only list of string ids backed directly by an IntSet
+ * Nothing is copied: get maps the int id at that position back to its string,
+ * and contains is an O(1) set lookup instead of a scan. The view is live, so it
+ * shows later changes; iterating while the set changes fails fast (copy the
+ * view first when the loop itself follows or unfollows).
+ */
+public final class IdListView extends AbstractList<String> implements RandomAccess {
+    private final IntSet ids;
+    private final Ids mapping;
+
+    public IdListView(IntSet ids, Ids mapping) {
+        this.ids = ids;
+        this.mapping = mapping;
+    }
+
+    @Override
+    public String get(int position) {
+        return mapping.toString(ids.get(position));
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof String && ids.contains(mapping.lookup((String) value));
+    }
+
+    @Override
+    public int indexOf(Object value) {
+        return contains(value) ? super.indexOf(value) : -1;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final int expected = ids.modifications();
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                checkUnchanged(); // Also here, a removal would otherwise just end the loop early
+                return position < ids.size();
+            }
+
+            @Override
+            public String next() {
+                checkUnchanged();
+                if (position >= ids.size()) {
+                    throw new NoSuchElementException();
+                }
+                return mapping.toString(ids.get(position++));
+            }
+
+            private void checkUnchanged() {
+                if (ids.modifications() != expected) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Ids - Two-way mapping between string ids ("user_12") and compact int ids (12)
+ * Canonical ids map to their number, so the mapping is stable across runs and
+ * needs no table. Any other id string (hand-edited or very old data) is interned
+ * and gets a negative int that is only valid for the current run.
+ */
+public final class Ids {
+    public static final Ids USERS = new Ids("user_");
+    public static final Ids POSTS = new Ids("post_");
+
+    // Returned by lookup for ids that were never seen
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final String prefix;
+    private final HashMap<String, Integer> interned = new HashMap<>(); // Guarded by this
+    private final ArrayList<String> internedNames = new ArrayList<>(); // Index i is int id -(i + 1)
+
+    private Ids(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Int id for a string id, assigning one to non-canonical ids
+     */
+    public int toInt(String id) {
+        int number = parse(id);
+        if (number >= 0) {
+            return number;
+        }
+        synchronized (this) {
+            Integer existing = interned.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            internedNames.add(id);
+            int assigned = -internedNames.size();
+            interned.put(id, assigned);
+            return assigned;
+        }
+    }
+
+    /**
+     * Int id for a string id, or UNKNOWN if it cannot be in any set (for lookups and removals)
+     */
+    public int lookup(String id) {
+        if (id == null) {
+            return UNKNOWN;
+        }
+        int number = parse(id);
+        if (number >= 0) {
+            return number;
+        }
+        synchronized (this) {
+            Integer existing = interned.get(id);
+            return existing != null ? existing : UNKNOWN;
+        }
+    }
+
+    public String toString(int id) {
+        if (id >= 0) {
+            return prefix + id;
+        }
+        synchronized (this) {
+            return internedNames.get(-id - 1);
+        }
+    }
+
+    // Helper: The number of a canonical id (prefix + number without leading zeros), else -1
+    private int parse(String id) {
+        int length = id.length();
+        int start = prefix.length();
+        if (length <= start || length - start > 10 || !id.startsWith(prefix)) {
+            return -1;
+        }
+        if (id.charAt(start) == '0' && length - start > 1) {
+            return -1; // "user_01" would not map back to itself
+        }
+        long number = 0;
+        for (int i = start; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number <= Integer.MAX_VALUE ? (int) number : -1;
+    }
+}
@@ -1,5 +1,9 @@
 package models;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class ImagePost extends Post {
     private static final long serialVersionUID = 1L;
     private String imagePath;
@@ -12,6 +16,19 @@ public class ImagePost extends Post {
         this.caption = caption;
     }
 
+    public ImagePost(DataInputStream in, int version) throws IOException {
+        super(in, version);
+        this.imagePath = BinaryIO.readString(in);
+        this.caption = BinaryIO.readString(in);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        super.writeTo(out);
+        BinaryIO.writeString(out, imagePath);
+        BinaryIO.writeString(out, caption);
+    }
+
     @Override
     public String getPostType() {
         return "Image Post";
@@ -19,11 +36,13 @@ public class ImagePost extends Post {
 
     @Override
     public String getContent() {
+        ensureBody();
         return imagePath;
     }
 
     @Override
     public String getDisplayContent() {
+        ensureBody();
         StringBuilder sb = new StringBuilder();
         sb.append("[ Image: ").append(getImageFileName()).append("]");
         if (caption != null && !caption.isEmpty()) {
@@ -32,11 +51,31 @@ public class ImagePost extends Post {
         return sb.toString();
     }
 
-    public String getImagePath() { return imagePath; }
+    public String getImagePath() {
+        ensureBody();
+        return imagePath;
+    }
 
-    public String getCaption() { return caption; }
+    public String getCaption() {
+        ensureBody();
+        return caption;
+    }
+
+    @Override
+    protected void copyContentFrom(Post full) {
+        ImagePost image = (ImagePost) full;
+        this.imagePath = image.imagePath;
+        this.caption = image.caption;
+    }
+
+    @Override
+    protected void clearContent() {
+        this.imagePath = null;
+        this.caption = null;
+    }
 
     public String getImageFileName() {
+        ensureBody();
         if (imagePath == null || imagePath.isEmpty()) {
             return "No image";
         }
@@ -48,11 +87,13 @@ public class ImagePost extends Post {
     }
 
     public boolean hasCaption() {
+        ensureBody();
         return caption != null && !caption.trim().isEmpty();
     }
 
     @Override
     public String toString() {
+        ensureBody();
         return super.toString() + "\n[Image: " + getImageFileName() + "]" + 
                (hasCaption() ? "\n" + caption : "");
     }
@@ -0,0 +1,219 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * IntSet - Insertion-ordered set of primitive ints
+ * Values sit in one int array in the order they were added (so lists shown in the
+ * GUI keep their order). Small sets are scanned directly; larger ones also get an
+ * open-addressing index, so contains stays O(1) without boxing every value.
+ */
+public final class IntSet {
+    private static final int INDEX_THRESHOLD = 8; // Below this a linear scan is faster than hashing
+
+    private int[] values;
+    private int end; // Slots in use, removed ones included
+    private int size; // Values present
+    private long[] removed; // One bit per slot whose value was removed, null when there are none
+    private int removedCount;
+    private int[] index; // Value -> slot + 1 (0 = empty), null while the set is small
+    private int modifications; // Lets views fail fast when the set changes under an iteration
+
+    public IntSet() {
+        this(4);
+    }
+
+    public IntSet(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Value at a position (insertion order)
+    public int get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+        return values[removed == null ? position : slotAt(position)];
+    }
+
+    public boolean contains(int value) {
+        return slotOf(value) >= 0;
+    }
+
+    /**
+     * Add a value at the end, returns false if it was already present
+     */
+    public boolean add(int value) {
+        if (contains(value)) {
+            return false;
+        }
+        if (end == values.length) {
+            if (removedCount * 4 >= end) {
+                compact(); // Reuse the removed slots rather than growing
+            }
+            if (end == values.length) {
+                values = Arrays.copyOf(values, end * 2);
+                if (removed != null) {
+                    removed = Arrays.copyOf(removed, (values.length + 63) >>> 6);
+                }
+            }
+        }
+        values[end++] = value;
+        size++;
+        modifications++;
+        if (index != null && end * 2 > index.length) {
+            rebuildIndex();
+        } else if (index != null) {
+            insertIntoIndex(value, end - 1);
+        } else if (size > INDEX_THRESHOLD) {
+            rebuildIndex();
+        }
+        return true;
+    }
+
+    /**
+     * Remove a value (later values move up), returns false if it was not present
+     * Large sets only mark the slot removed, the slots are compacted once removed ones
+     * outnumber the rest, so removing stays O(1) amortized.
+     */
+    public boolean remove(int value) {
+        int slot = slotOf(value);
+        if (slot < 0) {
+            return false;
+        }
+        size--;
+        modifications++;
+        if (index == null) {
+            System.arraycopy(values, slot + 1, values, slot, end - slot - 1); // Small, just shift
+            end--;
+            return true;
+        }
+        if (removed == null) {
+            removed = new long[(values.length + 63) >>> 6];
+        }
+        removed[slot >>> 6] |= 1L << slot;
+        removedCount++;
+        if (removedCount > size) {
+            compact();
+        }
+        return true;
+    }
+
+    public void clear() {
+        end = 0;
+        size = 0;
+        removed = null;
+        removedCount = 0;
+        modifications++;
+        index = null;
+    }
+
+    // Changes whenever the set does
+    int modifications() {
+        return modifications;
+    }
+
+    public int[] toArray() {
+        if (removed == null) {
+            return Arrays.copyOf(values, size);
+        }
+        int[] array = new int[size];
+        for (int slot = 0, i = 0; slot < end; slot++) {
+            if (!isRemoved(slot)) {
+                array[i++] = values[slot];
+            }
+        }
+        return array;
+    }
+
+    // Helper: Slot holding a value, or -1
+    private int slotOf(int value) {
+        if (index == null) {
+            for (int i = 0; i < end; i++) {
+                if (values[i] == value && !isRemoved(i)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int entry = hash(value) & mask; index[entry] != 0; entry = (entry + 1) & mask) {
+            int slot = index[entry] - 1;
+            if (values[slot] == value && !isRemoved(slot)) { // A removed copy may sit before a re-added one
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isRemoved(int slot) {
+        return removed != null && (removed[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    // Helper: Slot of the value at a position, skipping removed slots a word at a time
+    private int slotAt(int position) {
+        for (int word = 0; ; word++) {
+            int first = word << 6;
+            int present = Math.min(64, end - first) - Long.bitCount(removed[word]);
+            if (position < present) {
+                for (int slot = first; ; slot++) {
+                    if (!isRemoved(slot) && position-- == 0) {
+                        return slot;
+                    }
+                }
+            }
+            position -= present;
+        }
+    }
+
+    // Helper: Move the remaining values together, in order, and drop the removed marks
+    private void compact() {
+        int kept = 0;
+        for (int slot = 0; slot < end; slot++) {
+            if (!isRemoved(slot)) {
+                values[kept++] = values[slot];
+            }
+        }
+        end = kept;
+        removed = null;
+        removedCount = 0;
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        if (removed != null) {
+            compact(); // Rebuilds the index itself
+            return;
+        }
+        if (size <= INDEX_THRESHOLD) {
+            index = null;
+            return;
+        }
+        int capacity = Integer.highestOneBit(size * 4 - 1);
+        index = new int[Math.max(16, capacity)];
+        for (int i = 0; i < size; i++) {
+            insertIntoIndex(values[i], i);
+        }
+    }
+
+    private void insertIntoIndex(int value, int slot) {
+        int mask = index.length - 1;
+        int entry = hash(value) & mask;
+        while (index[entry] != 0) {
+            entry = (entry + 1) & mask;
+        }
+        index[entry] = slot + 1;
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,10 +1,20 @@
 package models;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Abstract Post class - Base class for all post types
+ * Likes and comments may be read and changed from several threads; they are only
+ * touched while holding this post's lock.
  */
 public abstract class Post implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -13,24 +23,160 @@ public abstract class Post implements Serializable {
     private String authorUsername;
     private String authorFullName;
     private long timestamp;
-    private ArrayList<String> likedByUserIds;
+    private IdBitmap likedByUserIds; // Compact user ids (see Ids)
     private ArrayList<Comment> comments;
 
+    // Java serialization form (legacy data files): likes were a string list
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("authorId", String.class),
+        new ObjectStreamField("authorUsername", String.class),
+        new ObjectStreamField("authorFullName", String.class),
+        new ObjectStreamField("timestamp", long.class),
+        new ObjectStreamField("likedByUserIds", ArrayList.class),
+        new ObjectStreamField("comments", ArrayList.class)
+    };
+
+    // Lazy loading: likes, comments and content can be dropped from memory and read back
+    // through the body source, while the header (id, author, timestamp, counts) stays
+    private transient BodySource bodySource;
+    private transient boolean bodyUnloaded;
+    private transient int unloadedLikeCount;
+    private transient int unloadedCommentCount;
+
+    /**
+     * Loads the body of a post whose body was unloaded (and sees every body access)
+     */
+    public interface BodySource {
+        void ensureLoaded(Post post);
+    }
+
     public Post(String id, String authorId, String authorUsername, String authorFullName) {
         this.id = id;
         this.authorId = authorId;
         this.authorUsername = authorUsername;
         this.authorFullName = authorFullName;
         this.timestamp = System.currentTimeMillis();
-        this.likedByUserIds = new ArrayList<>();
+        this.likedByUserIds = new IdBitmap();
         this.comments = new ArrayList<>();
     }
 
+    /**
+     * Read the common post fields (including comments) in the order writeTo wrote them
+     */
+    protected Post(DataInputStream in, int version) throws IOException {
+        this.id = BinaryIO.readString(in);
+        this.authorId = BinaryIO.readString(in);
+        this.authorUsername = BinaryIO.readString(in);
+        this.authorFullName = BinaryIO.readString(in);
+        this.timestamp = in.readLong();
+        this.likedByUserIds = BinaryIO.readBitmap(in, version, Ids.USERS);
+        int commentCount = in.readInt();
+        if (commentCount < 0) {
+            throw new IOException("Corrupt comment count: " + commentCount);
+        }
+        this.comments = new ArrayList<>(Math.min(commentCount, 1024));
+        for (int i = 0; i < commentCount; i++) {
+            comments.add(new Comment(in, version));
+        }
+    }
+
+    /**
+     * Write this post in the binary data format (subclasses append their own fields)
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        ensureBody();
+        BinaryIO.writeString(out, id);
+        BinaryIO.writeString(out, authorId);
+        BinaryIO.writeString(out, authorUsername);
+        BinaryIO.writeString(out, authorFullName);
+        out.writeLong(timestamp);
+        BinaryIO.writeBitmap(out, likedByUserIds, Ids.USERS);
+        out.writeInt(comments.size());
+        for (Comment comment : comments) {
+            comment.writeTo(out);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.id = (String) fields.get("id", null);
+        this.authorId = (String) fields.get("authorId", null);
+        this.authorUsername = (String) fields.get("authorUsername", null);
+        this.authorFullName = (String) fields.get("authorFullName", null);
+        this.timestamp = fields.get("timestamp", 0L);
+        this.likedByUserIds = BinaryIO.toBitmap((List<String>) fields.get("likedByUserIds", null), Ids.USERS);
+        ArrayList<Comment> stored = (ArrayList<Comment>) fields.get("comments", null);
+        this.comments = stored != null ? stored : new ArrayList<>();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ensureBody();
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("authorId", authorId);
+        fields.put("authorUsername", authorUsername);
+        fields.put("authorFullName", authorFullName);
+        fields.put("timestamp", timestamp);
+        fields.put("likedByUserIds", BinaryIO.toStringList(likedByUserIds, Ids.USERS));
+        fields.put("comments", comments);
+        out.writeFields();
+    }
+
     // Abstract methods
     public abstract String getPostType();
     public abstract String getContent();
     public abstract String getDisplayContent();
 
+    // Body handling for subclass fields
+    protected abstract void copyContentFrom(Post full);
+    protected abstract void clearContent();
+
+    // ==================== LAZY BODY ====================
+
+    public void setBodySource(BodySource bodySource) {
+        this.bodySource = bodySource;
+    }
+
+    public boolean isBodyLoaded() {
+        return !bodyUnloaded;
+    }
+
+    /**
+     * Make sure the body is in memory (subclasses call this before using their content)
+     */
+    protected final void ensureBody() {
+        if (bodySource != null) {
+            bodySource.ensureLoaded(this);
+        }
+    }
+
+    /**
+     * Take the body over from a fully loaded copy of this post
+     */
+    public synchronized void attachBody(Post full) {
+        this.likedByUserIds = full.likedByUserIds;
+        this.comments = full.comments;
+        copyContentFrom(full);
+        bodyUnloaded = false;
+    }
+
+    /**
+     * Drop the body from memory, keeping the counts for display
+     */
+    public synchronized void unloadBody() {
+        if (bodyUnloaded) {
+            return;
+        }
+        unloadedLikeCount = likedByUserIds.size();
+        unloadedCommentCount = comments.size();
+        likedByUserIds = null;
+        comments = null;
+        clearContent();
+        bodyUnloaded = true;
+    }
+
     // Getters
     public String getId() { return id; }
     public String getAuthorId() { return authorId; }
@@ -50,39 +196,66 @@ public abstract class Post implements Serializable {
         return "Just now";
     }
 
+    /**
+     * Run an action on the loaded body while holding this post's lock. The body is
+     * loaded before taking the lock (the loader locks other posts to unload them),
+     * and loaded again if it was dropped in between.
+     */
+    private <T> T withBody(Supplier<T> action) {
+        while (true) {
+            ensureBody();
+            synchronized (this) {
+                if (!bodyUnloaded) {
+                    return action.get();
+                }
+            }
+        }
+    }
+
     // Like functionality
     public void addLike(String userId) {
-        if (!likedByUserIds.contains(userId)) {
-            likedByUserIds.add(userId);
-        }
+        withBody(() -> likedByUserIds.add(Ids.USERS.toInt(userId)));
     }
 
     public void removeLike(String userId) {
-        likedByUserIds.remove(userId);
+        withBody(() -> likedByUserIds.remove(Ids.USERS.lookup(userId)));
+    }
+
+    /**
+     * Like if not yet liked, otherwise unlike, returns true if the post is now liked
+     */
+    public boolean toggleLike(String userId) {
+        return withBody(() -> likedByUserIds.toggle(Ids.USERS.toInt(userId)));
     }
 
     public boolean isLikedBy(String userId) {
-        return likedByUserIds.contains(userId);
+        return withBody(() -> likedByUserIds.contains(Ids.USERS.lookup(userId)));
     }
 
-    public int getLikeCount() {
+    public synchronized int getLikeCount() {
+        if (bodyUnloaded) {
+            return unloadedLikeCount;
+        }
         return likedByUserIds.size();
     }
 
     // Comment functionality
     public void addComment(Comment comment) {
-        comments.add(comment);
+        withBody(() -> comments.add(comment));
     }
     
     public boolean removeComment(String commentId) {
-        return comments.removeIf(c -> c.getId().equals(commentId));
+        return withBody(() -> comments.removeIf(c -> c.getId().equals(commentId)));
     }
 
     public ArrayList<Comment> getComments() {
-        return new ArrayList<>(comments);
+        return withBody(() -> new ArrayList<>(comments));
     }
 
-    public int getCommentCount() {
+    public synchronized int getCommentCount() {
+        if (bodyUnloaded) {
+            return unloadedCommentCount;
+        }
         return comments.size();
     }
 
@@ -1,6 +1,11 @@
 package models;
 
-import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.List;
 
 /**
@@ -10,15 +15,54 @@ public class RegularUser extends User {
     private static final long serialVersionUID = 1L;
     private boolean isVerified;
     private boolean isPrivateAccount;
-    private List<String> pendingFollowRequests; // Incoming follow requests (user IDs who want to follow this user)
+    private IntSet pendingFollowRequests; // Incoming follow requests (user IDs who want to follow this user)
+
+    // Java serialization form (legacy data files)
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("isVerified", boolean.class),
+        new ObjectStreamField("isPrivateAccount", boolean.class),
+        new ObjectStreamField("pendingFollowRequests", List.class)
+    };
 
     public RegularUser(String id, String username, String password, String fullName, String email, int age) {
         super(id, username, password, fullName, email, age);
         this.isVerified = false;
         this.isPrivateAccount = false; // Default to public account
-        this.pendingFollowRequests = new ArrayList<>();
+        this.pendingFollowRequests = new IntSet();
+    }
+
+    public RegularUser(DataInputStream in, int version) throws IOException {
+        super(in, version);
+        this.isVerified = in.readBoolean();
+        this.isPrivateAccount = in.readBoolean();
+        this.pendingFollowRequests = BinaryIO.readIdSet(in, version, Ids.USERS);
     }
 
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        super.writeTo(out);
+        initializePendingRequests();
+        out.writeBoolean(isVerified);
+        out.writeBoolean(isPrivateAccount);
+        BinaryIO.writeIdSet(out, pendingFollowRequests, Ids.USERS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.isVerified = fields.get("isVerified", false);
+        this.isPrivateAccount = fields.get("isPrivateAccount", false);
+        this.pendingFollowRequests = BinaryIO.toIdSet((List<String>) fields.get("pendingFollowRequests", null), Ids.USERS);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        initializePendingRequests();
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("isVerified", isVerified);
+        fields.put("isPrivateAccount", isPrivateAccount);
+        fields.put("pendingFollowRequests", BinaryIO.toStringList(pendingFollowRequests, Ids.USERS));
+        out.writeFields();
+    }
 
     @Override
     public String getUserType() {
@@ -40,24 +84,24 @@ public class RegularUser extends User {
     // Follow request management
     public List<String> getPendingFollowRequests() { 
         initializePendingRequests();
-        return new ArrayList<>(pendingFollowRequests); 
+        return new IdListView(pendingFollowRequests, Ids.USERS); // Read-only live view
     }
     
     public void addFollowRequest(String userId) {
         initializePendingRequests();
-        if (!pendingFollowRequests.contains(userId) && !isFollowing(userId)) {
-            pendingFollowRequests.add(userId);
+        if (!isFollowing(userId)) {
+            pendingFollowRequests.add(Ids.USERS.toInt(userId));
         }
     }
     
     public void removeFollowRequest(String userId) {
         initializePendingRequests();
-        pendingFollowRequests.remove(userId);
+        pendingFollowRequests.remove(Ids.USERS.lookup(userId));
     }
     
     public boolean hasPendingRequestFrom(String userId) {
         initializePendingRequests();
-        return pendingFollowRequests.contains(userId);
+        return pendingFollowRequests.contains(Ids.USERS.lookup(userId));
     }
     
     public boolean hasSentRequestTo(String userId) {
@@ -74,7 +118,7 @@ public class RegularUser extends User {
     // Initialize pendingFollowRequests if it's null (for backwards compatibility)
     private void initializePendingRequests() {
         if (pendingFollowRequests == null) {
-            pendingFollowRequests = new ArrayList<>();
+            pendingFollowRequests = new IntSet();
         }
     }
 
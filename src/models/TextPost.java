@@ -1,5 +1,9 @@
 package models;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class TextPost extends Post {
     private static final long serialVersionUID = 1L;
     private String textContent;
@@ -9,6 +13,17 @@ public class TextPost extends Post {
         this.textContent = textContent;
     }
 
+    public TextPost(DataInputStream in, int version) throws IOException {
+        super(in, version);
+        this.textContent = BinaryIO.readString(in);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        super.writeTo(out);
+        BinaryIO.writeString(out, textContent);
+    }
+
     @Override
     public String getPostType() {
         return "Text Post";
@@ -16,16 +31,29 @@ public class TextPost extends Post {
 
     @Override
     public String getContent() {
+        ensureBody();
         return textContent;
     }
 
     @Override
     public String getDisplayContent() {
+        ensureBody();
         return textContent;
     }
 
+    @Override
+    protected void copyContentFrom(Post full) {
+        this.textContent = ((TextPost) full).textContent;
+    }
+
+    @Override
+    protected void clearContent() {
+        this.textContent = null;
+    }
+
     @Override
     public String toString() {
+        ensureBody();
         return super.toString() + "\n" + textContent;
     }
 }
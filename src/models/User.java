@@ -1,7 +1,12 @@
 package models;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -19,9 +24,25 @@ public abstract class User implements Serializable {
     private int age;
     private String bio;
     private String profilePhotoPath;
-    private List<String> followers;
-    private List<String> following;
-    private List<String> postIds;
+    // Relationships as compact int ids (see Ids), strings only at the API boundary
+    private IntSet followers;
+    private IntSet following;
+    private IntSet postIds;
+
+    // Java serialization form (legacy data files): the relationships were string lists
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("username", String.class),
+        new ObjectStreamField("password", String.class),
+        new ObjectStreamField("fullName", String.class),
+        new ObjectStreamField("email", String.class),
+        new ObjectStreamField("age", int.class),
+        new ObjectStreamField("bio", String.class),
+        new ObjectStreamField("profilePhotoPath", String.class),
+        new ObjectStreamField("followers", List.class),
+        new ObjectStreamField("following", List.class),
+        new ObjectStreamField("postIds", List.class)
+    };
 
     public User(String id, String username, String password, String fullName, String email, int age) {
         this.id = id;
@@ -32,9 +53,75 @@ public abstract class User implements Serializable {
         this.age = age;
         this.bio = "";
         this.profilePhotoPath = null;
-        this.followers = new ArrayList<>();
-        this.following = new ArrayList<>();
-        this.postIds = new ArrayList<>();
+        this.followers = new IntSet();
+        this.following = new IntSet();
+        this.postIds = new IntSet();
+    }
+
+    /**
+     * Read the common user fields in the order writeTo wrote them
+     */
+    protected User(DataInputStream in, int version) throws IOException {
+        this.id = BinaryIO.readString(in);
+        this.username = BinaryIO.readString(in);
+        this.password = BinaryIO.readString(in); // Already hashed
+        this.fullName = BinaryIO.readString(in);
+        this.email = BinaryIO.readString(in);
+        this.age = in.readInt();
+        this.bio = BinaryIO.readString(in);
+        this.profilePhotoPath = BinaryIO.readString(in);
+        this.followers = BinaryIO.readIdSet(in, version, Ids.USERS);
+        this.following = BinaryIO.readIdSet(in, version, Ids.USERS);
+        this.postIds = BinaryIO.readIdSet(in, version, Ids.POSTS);
+    }
+
+    /**
+     * Write this user in the binary data format (subclasses append their own fields)
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        BinaryIO.writeString(out, id);
+        BinaryIO.writeString(out, username);
+        BinaryIO.writeString(out, password);
+        BinaryIO.writeString(out, fullName);
+        BinaryIO.writeString(out, email);
+        out.writeInt(age);
+        BinaryIO.writeString(out, bio);
+        BinaryIO.writeString(out, profilePhotoPath);
+        BinaryIO.writeIdSet(out, followers, Ids.USERS);
+        BinaryIO.writeIdSet(out, following, Ids.USERS);
+        BinaryIO.writeIdSet(out, postIds, Ids.POSTS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.id = (String) fields.get("id", null);
+        this.username = (String) fields.get("username", null);
+        this.password = (String) fields.get("password", null);
+        this.fullName = (String) fields.get("fullName", null);
+        this.email = (String) fields.get("email", null);
+        this.age = fields.get("age", 0);
+        this.bio = (String) fields.get("bio", null);
+        this.profilePhotoPath = (String) fields.get("profilePhotoPath", null);
+        this.followers = BinaryIO.toIdSet((List<String>) fields.get("followers", null), Ids.USERS);
+        this.following = BinaryIO.toIdSet((List<String>) fields.get("following", null), Ids.USERS);
+        this.postIds = BinaryIO.toIdSet((List<String>) fields.get("postIds", null), Ids.POSTS);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("username", username);
+        fields.put("password", password);
+        fields.put("fullName", fullName);
+        fields.put("email", email);
+        fields.put("age", age);
+        fields.put("bio", bio);
+        fields.put("profilePhotoPath", profilePhotoPath);
+        fields.put("followers", BinaryIO.toStringList(followers, Ids.USERS));
+        fields.put("following", BinaryIO.toStringList(following, Ids.USERS));
+        fields.put("postIds", BinaryIO.toStringList(postIds, Ids.POSTS));
+        out.writeFields();
     }
 
     // Abstract method 
@@ -66,46 +153,47 @@ public abstract class User implements Serializable {
     public String getProfilePhotoPath() { return profilePhotoPath; }
     public void setProfilePhotoPath(String profilePhotoPath) { this.profilePhotoPath = profilePhotoPath; }
 
-    public List<String> getFollowers() { return new ArrayList<>(followers); }
+    // Read-only live views of the relationships (see IdListView), nothing is copied
+    public List<String> getFollowers() { return new IdListView(followers, Ids.USERS); }
     public int getFollowerCount() { return followers.size(); }
 
-    public List<String> getFollowing() { return new ArrayList<>(following); }
+    public List<String> getFollowing() { return new IdListView(following, Ids.USERS); }
     public int getFollowingCount() { return following.size(); }
 
-    public List<String> getPostIds() { return new ArrayList<>(postIds); }
+    public List<String> getPostIds() { return new IdListView(postIds, Ids.POSTS); }
     public int getPostCount() { return postIds.size(); }
 
     // Social actions
     public void addFollower(String userId) {
-        if (!followers.contains(userId)) {
-            followers.add(userId);
-        }
+        followers.add(Ids.USERS.toInt(userId));
     }
 
     public void removeFollower(String userId) {
-        followers.remove(userId);
+        followers.remove(Ids.USERS.lookup(userId));
     }
 
     public void follow(String userId) {
-        if (!following.contains(userId)) {
-            following.add(userId);
-        }
+        following.add(Ids.USERS.toInt(userId));
     }
 
     public void unfollow(String userId) {
-        following.remove(userId);
+        following.remove(Ids.USERS.lookup(userId));
     }
 
     public boolean isFollowing(String userId) {
-        return following.contains(userId);
+        return following.contains(Ids.USERS.lookup(userId));
+    }
+
+    public boolean hasFollower(String userId) {
+        return followers.contains(Ids.USERS.lookup(userId));
     }
 
     public void addPost(String postId) {
-        postIds.add(postId);
+        postIds.add(Ids.POSTS.toInt(postId));
     }
 
     public void removePost(String postId) {
-        postIds.remove(postId);
+        postIds.remove(Ids.POSTS.lookup(postId));
     }
 
     public boolean validatePassword(String inputPassword) {
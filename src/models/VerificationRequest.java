@@ -1,5 +1,8 @@
 package models;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -25,6 +28,24 @@ public class VerificationRequest implements Serializable {
         this.resolved = false;
     }
     
+    public VerificationRequest(DataInputStream in, int version) throws IOException {
+        this.userId = BinaryIO.readString(in);
+        this.username = BinaryIO.readString(in);
+        this.fullName = BinaryIO.readString(in);
+        this.contentFilePath = BinaryIO.readString(in);
+        this.timestamp = in.readLong();
+        this.resolved = in.readBoolean();
+    }
+    
+    public void writeTo(DataOutputStream out) throws IOException {
+        BinaryIO.writeString(out, userId);
+        BinaryIO.writeString(out, username);
+        BinaryIO.writeString(out, fullName);
+        BinaryIO.writeString(out, contentFilePath);
+        out.writeLong(timestamp);
+        out.writeBoolean(resolved);
+    }
+    
     // Getters
     public String getUserId() { return userId; }
     public String getUsername() { return username; }
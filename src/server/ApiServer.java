@@ -0,0 +1,792 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import models.*;
+import system.*;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ApiServer - Headless HTTP/JSON API over SocialNetworkSystem
+ * Listens on localhost with the JDK's HttpServer and handles every request on a
+ * virtual thread of its own, so many clients can wait on the system at once without
+ * tying up platform threads. Clients sign in with POST /api/login and send the
+ * returned token as "Authorization: Bearer <token>"; each token is a Session, so
+ * any number of users can be signed in. Requests and responses are JSON, errors
+ * are {"error": "..."} with a matching status code.
+ *
+ *   POST   /api/register                      {username, password, fullName, email, age}
+ *   POST   /api/login                         {username, password} -> {token, user}
+ *   POST   /api/logout
+ *   GET    /api/me
+ *   GET    /api/feed?cursor=&limit=
+ *   POST   /api/posts                         {content}
+ *   POST   /api/posts/image?caption=&name=     (the image file itself as the body)
+ *   GET    /api/posts/{id}                    (with comments)
+ *   DELETE /api/posts/{id}
+ *   POST   /api/posts/{id}/like               (toggles)
+ *   POST   /api/posts/{id}/comments           {content}
+ *   POST   /api/posts/{id}/comments/{id}/report {reason}
+ *   GET    /api/users/{id}
+ *   GET    /api/users/{id}/posts?cursor=&limit=
+ *   POST   /api/users/{id}/follow             (toggles, or sends a request to a private account)
+ *   GET    /api/follow-requests
+ *   POST   /api/follow-requests/{id}/approve | reject
+ *   GET    /api/search/users?q=&limit=
+ *   GET    /api/search/posts?q=&limit=
+ *   GET    /api/media/{hash}                  (the file behind an imageUrl or profilePhotoUrl)
+ *   Admins only:
+ *   GET    /api/moderation/reports
+ *   POST   /api/moderation/reports/{id}/resolve
+ *   DELETE /api/posts/{id}/comments/{id}      (a reported comment)
+ *   POST   /api/moderation/users/{id}/ban | unban | verify | reject-verification
+ *   GET    /api/moderation/verifications
+ */
+public final class ApiServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 1024; // Connections waiting to be accepted
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int MAX_IMAGE_BYTES = 10 * 1024 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final SocialNetworkSystem system;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ArrayList<Route> routes = new ArrayList<>();
+
+    /**
+     * Handles a matched request, returning the value to send as JSON (or a File to send as is)
+     */
+    private interface Endpoint {
+        Object handle(Call call) throws IOException;
+    }
+
+    /**
+     * Route - An HTTP method and a path pattern ("{}" matches one segment)
+     */
+    private static final class Route {
+        final String method;
+        final String[] segments;
+        final Endpoint endpoint;
+
+        Route(String method, String pattern, Endpoint endpoint) {
+            this.method = method;
+            this.segments = pattern.substring(1).split("/");
+            this.endpoint = endpoint;
+        }
+
+        // Path parameters if the path matches the pattern, otherwise null
+        List<String> match(String[] path) {
+            if (path.length != segments.length) {
+                return null;
+            }
+            ArrayList<String> params = new ArrayList<>();
+            for (int i = 0; i < path.length; i++) {
+                if (segments[i].equals("{}")) {
+                    params.add(path[i]);
+                } else if (!segments[i].equals(path[i])) {
+                    return null;
+                }
+            }
+            return params;
+        }
+    }
+
+    /**
+     * ApiException - Ends a request with an error status and message
+     */
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Call - One request being handled: its parameters, body and session
+     */
+    private static final class Call {
+        final HttpExchange exchange;
+        final List<String> params;
+        final Map<String, String> query;
+        final Session session; // Null if no valid token was sent
+        int status = 200;
+        private Map<String, Object> body;
+
+        Call(HttpExchange exchange, List<String> params, Session session) {
+            this.exchange = exchange;
+            this.params = params;
+            this.query = parseQuery(exchange.getRequestURI().getRawQuery());
+            this.session = session;
+        }
+
+        String param(int index) {
+            return params.get(index);
+        }
+
+        Session session() {
+            if (session == null) {
+                throw new ApiException(401, "Sign in first");
+            }
+            return session;
+        }
+
+        Map<String, Object> body() throws IOException {
+            if (body == null) {
+                try {
+                    body = Json.readObject(new String(readBody(exchange, MAX_BODY_BYTES), StandardCharsets.UTF_8));
+                } catch (IllegalArgumentException e) {
+                    throw new ApiException(400, "Invalid JSON: " + e.getMessage());
+                }
+            }
+            return body;
+        }
+
+        // A string field of the body, or null if it is missing
+        String field(String name) throws IOException {
+            Object value = body().get(name);
+            if (value != null && !(value instanceof String)) {
+                throw new ApiException(400, "Field must be a string: " + name);
+            }
+            return (String) value;
+        }
+
+        String requiredField(String name) throws IOException {
+            String value = field(name);
+            if (value == null || value.trim().isEmpty()) {
+                throw new ApiException(400, "Missing field: " + name);
+            }
+            return value;
+        }
+
+        String requiredQuery(String name) {
+            String value = query.get(name);
+            if (value == null || value.trim().isEmpty()) {
+                throw new ApiException(400, "Missing parameter: " + name);
+            }
+            return value;
+        }
+
+        PageCursor cursor() {
+            String text = query.get("cursor");
+            if (text == null || text.isEmpty()) {
+                return null;
+            }
+            PageCursor cursor = PageCursor.parse(text);
+            if (cursor == null) {
+                throw new ApiException(400, "Invalid cursor");
+            }
+            return cursor;
+        }
+
+        int limit() {
+            String text = query.get("limit");
+            if (text == null) {
+                return DEFAULT_PAGE_SIZE;
+            }
+            try {
+                return Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(text)));
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "Invalid limit");
+            }
+        }
+    }
+
+    /**
+     * Create a server for the system on a localhost port (0 picks a free one).
+     * Call start to accept requests.
+     */
+    public ApiServer(SocialNetworkSystem system, int port) throws IOException {
+        this.system = system;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+        registerRoutes();
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, giving running ones up to delaySeconds to finish
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // ==================== ROUTES ====================
+
+    private void registerRoutes() {
+        // Accounts
+        route("POST", "/api/register", this::register);
+        route("POST", "/api/login", this::login);
+        route("POST", "/api/logout", this::logout);
+        route("GET", "/api/me", call -> userJson(call.session().getUser()));
+
+        // Posts
+        route("GET", "/api/feed", this::feed);
+        route("POST", "/api/posts", this::createPost);
+        route("POST", "/api/posts/image", this::createImagePost);
+        route("GET", "/api/posts/{}", this::getPost);
+        route("DELETE", "/api/posts/{}", this::deletePost);
+        route("POST", "/api/posts/{}/like", this::likePost);
+        route("POST", "/api/posts/{}/comments", this::addComment);
+        route("POST", "/api/posts/{}/comments/{}/report", this::reportComment);
+        route("DELETE", "/api/posts/{}/comments/{}", this::deleteComment);
+
+        // Users and follows
+        route("GET", "/api/users/{}", call -> userJson(existingUser(call.param(0))));
+        route("GET", "/api/users/{}/posts", this::userPosts);
+        route("POST", "/api/users/{}/follow", this::follow);
+        route("GET", "/api/follow-requests", this::followRequests);
+        route("POST", "/api/follow-requests/{}/approve", call ->
+            done(system.approveFollowRequest(call.session(), call.param(0)), 404, "No such follow request"));
+        route("POST", "/api/follow-requests/{}/reject", call ->
+            done(system.rejectFollowRequest(call.session(), call.param(0)), 404, "No such follow request"));
+
+        // Search
+        route("GET", "/api/search/users", call ->
+            usersJson(system.searchUsers(call.requiredQuery("q"), call.limit())));
+        route("GET", "/api/search/posts", call ->
+            postsJson(system.searchPosts(call.session(), call.requiredQuery("q"), call.limit()), call.session()));
+
+        // Media
+        route("GET", "/api/media/{}", this::media);
+
+        // Moderation (admins)
+        route("GET", "/api/moderation/reports", this::reports);
+        route("POST", "/api/moderation/reports/{}/resolve", call ->
+            done(system.resolveReport(admin(call), call.param(0)), 404, "No such report"));
+        route("POST", "/api/moderation/users/{}/ban", call ->
+            done(system.banUser(admin(call), call.param(0)), 400, "This user can't be banned"));
+        route("POST", "/api/moderation/users/{}/unban", call ->
+            done(system.unbanUser(admin(call), call.param(0)), 400, "This user can't be unbanned"));
+        route("GET", "/api/moderation/verifications", this::verifications);
+        route("POST", "/api/moderation/users/{}/verify", call ->
+            done(system.verifyUser(admin(call), call.param(0)), 404, "No such user to verify"));
+        route("POST", "/api/moderation/users/{}/reject-verification", call ->
+            done(system.rejectVerificationRequest(admin(call), call.param(0)), 404, "No pending verification request"));
+    }
+
+    private void route(String method, String pattern, Endpoint endpoint) {
+        routes.add(new Route(method, pattern, endpoint));
+    }
+
+    // ==================== ENDPOINTS ====================
+
+    private Object register(Call call) throws IOException {
+        String username = call.requiredField("username").trim();
+        String password = call.requiredField("password");
+        String fullName = call.requiredField("fullName").trim();
+        String email = call.requiredField("email").trim();
+        Object age = call.body().get("age");
+        if (!(age instanceof Double)) {
+            throw new ApiException(400, "Missing field: age");
+        }
+        double years = (Double) age;
+        if (years != Math.rint(years)) {
+            throw new ApiException(400, "Please enter a valid age");
+        }
+        if (system.getUserByUsername(username) != null || system.isEmailTaken(email)) {
+            throw new ApiException(409, "Username or email is already taken");
+        }
+        // Same rules as the registration form
+        int ageYears = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, years));
+        String problem = system.validateRegistration(username, password, fullName, email, ageYears);
+        if (problem != null) {
+            throw new ApiException(400, problem);
+        }
+        User user = system.registerUser(username, password, fullName, email, ageYears, false);
+        if (user == null) {
+            throw new ApiException(409, "Username or email is already taken");
+        }
+        call.status = 201;
+        return userJson(user);
+    }
+
+    private Object login(Call call) throws IOException {
+        String username = call.requiredField("username");
+        Session session = system.openSession(username, call.requiredField("password"));
+        if (session == null) {
+            if (system.isLoginFailedDueToBan(username)) {
+                throw new ApiException(403, "This account is banned");
+            }
+            throw new ApiException(401, "Wrong username or password");
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("token", session.getToken());
+        json.put("user", userJson(session.getUser()));
+        return json;
+    }
+
+    private Object logout(Call call) {
+        system.closeSession(call.session());
+        return ok();
+    }
+
+    private Object feed(Call call) {
+        Session session = call.session();
+        return pageJson(system.getFeedPage(session, call.cursor(), call.limit()), session);
+    }
+
+    private Object createPost(Call call) throws IOException {
+        Session session = call.session();
+        Post post = system.createTextPost(session, call.requiredField("content"));
+        if (post == null) {
+            throw new ApiException(400, "Could not create the post");
+        }
+        call.status = 201;
+        return postJson(post, session);
+    }
+
+    // The image is uploaded as the request body; clients never name files on the server
+    private Object createImagePost(Call call) throws IOException {
+        Session session = call.session();
+        byte[] image = readBody(call.exchange, MAX_IMAGE_BYTES);
+        String format = imageFormat(image);
+        if (format == null) {
+            throw new ApiException(415, "The body must be a PNG, JPEG, GIF or BMP image");
+        }
+        // Stored under a temporary name first, the media store keeps its own copy
+        Path directory = Files.createTempDirectory("upload");
+        Path file = directory.resolve(uploadName(call.query.get("name"), format));
+        Post post;
+        try {
+            Files.write(file, image);
+            post = system.createImagePost(session, file.toString(), call.query.get("caption"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        }
+        if (post == null) {
+            if (!session.isOpen()) {
+                throw new ApiException(401, "Sign in first"); // Closed meanwhile
+            }
+            throw new ApiException(500, "Could not store the image");
+        }
+        call.status = 201;
+        return postJson(post, session);
+    }
+
+    private Object getPost(Call call) {
+        Session session = call.session();
+        Post post = visiblePost(session, call.param(0));
+        Map<String, Object> json = postJson(post, session);
+        List<Object> comments = new ArrayList<>();
+        for (Comment comment : post.getComments()) {
+            comments.add(commentJson(comment));
+        }
+        json.put("comments", comments);
+        return json;
+    }
+
+    private Object deletePost(Call call) {
+        Session session = call.session();
+        visiblePost(session, call.param(0));
+        return done(system.deletePost(session, call.param(0)), 403, "You can't delete this post");
+    }
+
+    private Object likePost(Call call) {
+        Session session = call.session();
+        Post post = visiblePost(session, call.param(0));
+        system.likePost(session, post.getId());
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("liked", system.isPostLiked(session, post.getId()));
+        json.put("likeCount", post.getLikeCount());
+        return json;
+    }
+
+    private Object addComment(Call call) throws IOException {
+        Session session = call.session();
+        Post post = visiblePost(session, call.param(0));
+        Comment comment = system.addComment(session, post.getId(), call.requiredField("content"));
+        if (comment == null) {
+            throw new ApiException(400, "Could not add the comment");
+        }
+        call.status = 201;
+        return commentJson(comment);
+    }
+
+    private Object reportComment(Call call) throws IOException {
+        Session session = call.session();
+        Post post = visiblePost(session, call.param(0));
+        return done(system.reportComment(session, call.param(1), post.getId(), call.requiredField("reason")),
+                    400, "Could not report this comment");
+    }
+
+    private Object deleteComment(Call call) {
+        return done(system.deleteReportedComment(admin(call), call.param(1), call.param(0)), 404, "No such comment");
+    }
+
+    private Object userPosts(Call call) {
+        Session session = call.session();
+        User user = existingUser(call.param(0));
+        if (!system.canSeePostsOf(session, user.getId())) {
+            throw new ApiException(403, "This account is private");
+        }
+        return pageJson(system.getPostsByUserPage(user.getId(), call.cursor(), call.limit()), session);
+    }
+
+    private Object follow(Call call) {
+        Session session = call.session();
+        String userId = existingUser(call.param(0)).getId();
+        if (!system.followUser(session, userId)) {
+            throw new ApiException(400, "You can't follow this user");
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("following", system.isFollowingUser(session, userId));
+        json.put("requested", system.hasSentFollowRequest(session, userId));
+        return json;
+    }
+
+    private Object followRequests(Call call) {
+        List<Object> requesters = new ArrayList<>();
+        for (String requesterId : system.getPendingFollowRequests(call.session())) {
+            User requester = system.getUserById(requesterId);
+            if (requester != null) {
+                requesters.add(userJson(requester));
+            }
+        }
+        return requesters;
+    }
+
+    private Object reports(Call call) {
+        List<Object> reports = new ArrayList<>();
+        for (CommentReport report : system.getUnresolvedReports(admin(call))) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("id", report.getReportId());
+            json.put("commentId", report.getCommentId());
+            json.put("postId", report.getPostId());
+            json.put("reporterId", report.getReporterId());
+            json.put("reporterUsername", report.getReporterUsername());
+            json.put("commentAuthorId", report.getCommentAuthorId());
+            json.put("commentAuthorUsername", report.getCommentAuthorUsername());
+            json.put("commentContent", report.getCommentContent());
+            json.put("reason", report.getReason());
+            json.put("timestamp", report.getTimestamp());
+            reports.add(json);
+        }
+        return reports;
+    }
+
+    private Object verifications(Call call) {
+        List<Object> requests = new ArrayList<>();
+        for (VerificationRequest request : system.getPendingVerificationRequests(admin(call))) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("userId", request.getUserId());
+            json.put("username", request.getUsername());
+            json.put("fullName", request.getFullName());
+            json.put("timestamp", request.getTimestamp());
+            requests.add(json);
+        }
+        return requests;
+    }
+
+    // Stored media is named by its content hash, so the file behind a URL never changes
+    private Object media(Call call) {
+        call.session();
+        String reference = "media:" + call.param(0);
+        MediaStore store = MediaStore.getInstance();
+        if (MediaStore.hashOf(reference) == null || store.getReferenceCount(reference) == 0) {
+            throw new ApiException(404, "No such media");
+        }
+        return store.resolve(reference);
+    }
+
+    // ==================== HELPERS ====================
+
+    // Session of an admin, or 403
+    private static Session admin(Call call) {
+        Session session = call.session();
+        if (!(session.getUser() instanceof Admin)) {
+            throw new ApiException(403, "Admins only");
+        }
+        return session;
+    }
+
+    private User existingUser(String userId) {
+        User user = system.getUserById(userId);
+        if (user == null) {
+            throw new ApiException(404, "No such user");
+        }
+        return user;
+    }
+
+    // A post the session's user may see; others are reported missing, not forbidden
+    private Post visiblePost(Session session, String postId) {
+        Post post = system.getPostById(postId);
+        if (post == null || !system.canSeePostsOf(session, post.getAuthorId())) {
+            throw new ApiException(404, "No such post");
+        }
+        return post;
+    }
+
+    private static Object done(boolean success, int failureStatus, String failureMessage) {
+        if (!success) {
+            throw new ApiException(failureStatus, failureMessage);
+        }
+        return ok();
+    }
+
+    private static Map<String, Object> ok() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("ok", true);
+        return json;
+    }
+
+    private Map<String, Object> userJson(User user) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", user.getId());
+        json.put("username", user.getUsername());
+        json.put("fullName", user.getFullName());
+        json.put("bio", user.getBio());
+        json.put("profilePhotoUrl", mediaUrl(user.getProfilePhotoPath()));
+        json.put("type", user.getUserType());
+        if (user instanceof RegularUser) {
+            json.put("verified", ((RegularUser) user).isVerified());
+            json.put("privateAccount", ((RegularUser) user).isPrivateAccount());
+        }
+        json.put("followerCount", user.getFollowerCount());
+        json.put("followingCount", user.getFollowingCount());
+        json.put("postCount", user.getPostCount());
+        json.put("banned", system.isUserBanned(user.getId()));
+        return json;
+    }
+
+    private List<Object> usersJson(List<User> users) {
+        List<Object> json = new ArrayList<>();
+        for (User user : users) {
+            json.add(userJson(user));
+        }
+        return json;
+    }
+
+    private Map<String, Object> postJson(Post post, Session session) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", post.getId());
+        json.put("type", post instanceof ImagePost ? "image" : "text");
+        json.put("authorId", post.getAuthorId());
+        json.put("authorUsername", post.getAuthorUsername());
+        json.put("authorFullName", post.getAuthorFullName());
+        json.put("timestamp", post.getTimestamp());
+        if (post instanceof ImagePost) {
+            json.put("imageUrl", mediaUrl(((ImagePost) post).getImagePath()));
+            json.put("caption", ((ImagePost) post).getCaption());
+        } else {
+            json.put("content", post.getContent());
+        }
+        json.put("likeCount", post.getLikeCount());
+        json.put("commentCount", post.getCommentCount());
+        json.put("liked", system.isPostLiked(session, post.getId()));
+        return json;
+    }
+
+    // Where a client fetches stored media, null for paths stored before the media store
+    // (those only exist on the server's disk)
+    private static String mediaUrl(String value) {
+        String hash = MediaStore.hashOf(value);
+        return hash != null ? "/api/media/" + hash : null;
+    }
+
+    private List<Object> postsJson(List<Post> posts, Session session) {
+        List<Object> json = new ArrayList<>();
+        for (Post post : posts) {
+            json.add(postJson(post, session));
+        }
+        return json;
+    }
+
+    private Map<String, Object> pageJson(Page<Post> page, Session session) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("posts", postsJson(page.getItems(), session));
+        json.put("nextCursor", page.hasMore() ? page.getNextCursor().toString() : null);
+        return json;
+    }
+
+    private static Map<String, Object> commentJson(Comment comment) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", comment.getId());
+        json.put("postId", comment.getPostId());
+        json.put("authorId", comment.getAuthorId());
+        json.put("authorUsername", comment.getAuthorUsername());
+        json.put("authorFullName", comment.getAuthorFullName());
+        json.put("content", comment.getContent());
+        json.put("timestamp", comment.getTimestamp());
+        return json;
+    }
+
+    // ==================== DISPATCH ====================
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status;
+        Object response;
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+            Route matched = null;
+            List<String> params = null;
+            boolean pathMatched = false;
+            for (Route route : routes) {
+                List<String> routeParams = route.match(path);
+                if (routeParams != null) {
+                    pathMatched = true;
+                    if (route.method.equals(exchange.getRequestMethod())) {
+                        matched = route;
+                        params = routeParams;
+                        break;
+                    }
+                }
+            }
+            if (matched == null) {
+                throw pathMatched ? new ApiException(405, "Method not allowed") : new ApiException(404, "Not found");
+            }
+            Call call = new Call(exchange, params, sessionOf(exchange));
+            response = matched.endpoint.handle(call);
+            status = call.status;
+        } catch (ApiException e) {
+            status = e.status;
+            response = Collections.singletonMap("error", e.getMessage());
+        } catch (IOException e) {
+            logFailure(exchange, e); // E.g. the upload couldn't be written
+            status = 500;
+            response = Collections.singletonMap("error", "Internal error");
+        } catch (RuntimeException e) {
+            logFailure(exchange, e);
+            status = 500;
+            response = Collections.singletonMap("error", "Internal error");
+        }
+
+        if (response instanceof File) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream((File) response))) {
+                sendFile(exchange, in, ((File) response).length());
+                return;
+            } catch (FileNotFoundException e) {
+                status = 404; // Deleted since it was looked up
+                response = Collections.singletonMap("error", "No such media");
+            }
+        }
+        byte[] bytes = Json.write(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendFile(HttpExchange exchange, InputStream in, long length) throws IOException {
+        String type = URLConnection.guessContentTypeFromStream(in); // From the first bytes
+        exchange.getResponseHeaders().set("Content-Type", type != null ? type : "application/octet-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "private, max-age=31536000, immutable");
+        exchange.sendResponseHeaders(200, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            in.transferTo(out);
+        }
+    }
+
+    // Helper: One line per failed request: what was asked, what failed and where
+    private static void logFailure(HttpExchange exchange, Exception e) {
+        StackTraceElement[] trace = e.getStackTrace();
+        System.err.println("API " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath()
+                           + " failed: " + e + (trace.length > 0 ? " at " + trace[0] : ""));
+    }
+
+    // Helper: The session named by the request's bearer token, or null
+    private Session sessionOf(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        Session session = system.getSession(header.substring(7).trim());
+        if (session != null && system.isUserBanned(session.getUser().getId())) {
+            return null; // Banned since signing in
+        }
+        return session;
+    }
+
+    private static byte[] readBody(HttpExchange exchange, int maxBytes) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+                if (body.size() > maxBytes) {
+                    throw new ApiException(413, "Request body too large");
+                }
+            }
+            return body.toByteArray();
+        }
+    }
+
+    // Helper: Format name of an image ImageIO can read (e.g. "png"), or null
+    private static String imageFormat(byte[] bytes) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : Collections.emptyIterator();
+            return readers.hasNext() ? readers.next().getFormatName().toLowerCase(Locale.ROOT) : null;
+        }
+    }
+
+    // Helper: A safe file name for an upload, from the client's name (letters, digits, '.', '-', '_')
+    private static String uploadName(String requested, String format) {
+        String name = requested != null ? requested.replaceAll("[^A-Za-z0-9._-]", "_") : "";
+        name = name.replaceAll("^[._]+", "");
+        if (name.isEmpty()) {
+            name = "image";
+        }
+        if (name.length() > 100) {
+            name = name.substring(0, 100);
+        }
+        return name.contains(".") ? name : name + "." + format;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            try {
+                query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new ApiException(400, "Invalid query string");
+            }
+        }
+        return query;
+    }
+}
@@ -0,0 +1,187 @@
+package system;
+
+import models.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * BinaryCodec - Compact, versioned binary format for the data files
+ * Every file starts with MAGIC and the schema version it was written with.
+ * Each model writes its own fields (writeTo) and reads them back through its
+ * reading constructor, this class adds type tags and list framing.
+ *
+ * Version history:
+ *   1 - first binary format (replaces Java serialization)
+ *   2 - follower, following, post, like, request and ban ids stored as id sets (BinaryIO.writeIdSet)
+ *   3 - post and comment likes stored as compressed bitmaps (BinaryIO.writeBitmap)
+ */
+public class BinaryCodec {
+    public static final int MAGIC = 0x53434442; // "SCDB"
+    public static final int SCHEMA_VERSION = 3;
+
+    // Type tags
+    private static final byte TAG_REGULAR_USER = 1;
+    private static final byte TAG_ADMIN = 2;
+    private static final byte TAG_TEXT_POST = 1;
+    private static final byte TAG_IMAGE_POST = 2;
+
+    /**
+     * Writes a value after the header
+     */
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads a value after the header, given the version it was written with
+     */
+    public interface Reader<T> {
+        T read(DataInputStream in, int version) throws IOException;
+    }
+
+    // ==================== HEADER ====================
+
+    public static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(SCHEMA_VERSION);
+    }
+
+    /**
+     * Read the header and return the schema version
+     */
+    public static int readHeader(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a binary data file");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > SCHEMA_VERSION) {
+            throw new IOException("Unsupported schema version: " + version);
+        }
+        return version;
+    }
+
+    // ==================== USERS ====================
+
+    public static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeByte(user instanceof Admin ? TAG_ADMIN : TAG_REGULAR_USER);
+        user.writeTo(out);
+    }
+
+    public static User readUser(DataInputStream in, int version) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_REGULAR_USER: return new RegularUser(in, version);
+            case TAG_ADMIN: return new Admin(in, version);
+            default: throw new IOException("Unknown user type: " + tag);
+        }
+    }
+
+    public static void writeUsers(DataOutputStream out, List<User> users) throws IOException {
+        out.writeInt(users.size());
+        for (User user : users) {
+            writeUser(out, user);
+        }
+    }
+
+    public static ArrayList<User> readUsers(DataInputStream in, int version) throws IOException {
+        int size = readSize(in);
+        ArrayList<User> users = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            users.add(readUser(in, version));
+        }
+        return users;
+    }
+
+    // ==================== POSTS ====================
+
+    public static void writePost(DataOutputStream out, Post post) throws IOException {
+        out.writeByte(post instanceof ImagePost ? TAG_IMAGE_POST : TAG_TEXT_POST);
+        post.writeTo(out);
+    }
+
+    public static Post readPost(DataInputStream in, int version) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_TEXT_POST: return new TextPost(in, version);
+            case TAG_IMAGE_POST: return new ImagePost(in, version);
+            default: throw new IOException("Unknown post type: " + tag);
+        }
+    }
+
+    public static void writePosts(DataOutputStream out, List<Post> posts) throws IOException {
+        out.writeInt(posts.size());
+        for (Post post : posts) {
+            writePost(out, post);
+        }
+    }
+
+    public static ArrayList<Post> readPosts(DataInputStream in, int version) throws IOException {
+        int size = readSize(in);
+        ArrayList<Post> posts = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            posts.add(readPost(in, version));
+        }
+        return posts;
+    }
+
+    // ==================== REQUESTS AND REPORTS ====================
+
+    public static void writeVerificationRequests(DataOutputStream out, List<VerificationRequest> requests) throws IOException {
+        out.writeInt(requests.size());
+        for (VerificationRequest request : requests) {
+            request.writeTo(out);
+        }
+    }
+
+    public static ArrayList<VerificationRequest> readVerificationRequests(DataInputStream in, int version) throws IOException {
+        int size = readSize(in);
+        ArrayList<VerificationRequest> requests = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            requests.add(new VerificationRequest(in, version));
+        }
+        return requests;
+    }
+
+    public static void writeCommentReports(DataOutputStream out, List<CommentReport> reports) throws IOException {
+        out.writeInt(reports.size());
+        for (CommentReport report : reports) {
+            report.writeTo(out);
+        }
+    }
+
+    public static ArrayList<CommentReport> readCommentReports(DataInputStream in, int version) throws IOException {
+        int size = readSize(in);
+        ArrayList<CommentReport> reports = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            reports.add(new CommentReport(in, version));
+        }
+        return reports;
+    }
+
+    // ==================== COUNTERS ====================
+
+    public static void writeCounters(DataOutputStream out, int[] counters) throws IOException {
+        out.writeInt(counters.length);
+        for (int counter : counters) {
+            out.writeInt(counter);
+        }
+    }
+
+    public static int[] readCounters(DataInputStream in, int version) throws IOException {
+        int[] counters = new int[readSize(in)];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = in.readInt();
+        }
+        return counters;
+    }
+
+    // Helper: Read a list size, rejecting values only a corrupt file could contain
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > 50_000_000) {
+            throw new IOException("Corrupt list size: " + size);
+        }
+        return size;
+    }
+}
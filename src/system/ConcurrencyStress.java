@@ -0,0 +1,174 @@
+package system;
+
+import models.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ConcurrencyStress - Checks that concurrent sessions don't lose updates
+ * Worker threads, each signed in with a session of its own, like and comment on the
+ * same few posts, create posts and send follow requests, while reading feeds and
+ * searching. Another thread approves the follow requests as they come in. Afterwards
+ * every count must match what the threads did, no id may be handed out twice, and
+ * the data loaded back from disk must match memory.
+ *
+ * Run it from an empty directory, as it keeps its data in ./data like the application.
+ * Usage: java system.ConcurrencyStress [threads] [operations per thread]
+ * (add -Dsocialconnect.lazyPosts=true to run it against lazily loaded post bodies)
+ */
+public class ConcurrencyStress {
+    private static final int TARGET_POSTS = 4;
+    private static final int POST_EVERY = 50; // Each thread also creates a post this often
+    private static final long APPROVE_TIMEOUT_MS = 60_000;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        String[] existing = new File("data").list();
+        if (existing != null && existing.length > 0) {
+            System.err.println("./data is not empty, run this from an empty directory");
+            System.exit(2);
+        }
+
+        SocialNetworkSystem system = SocialNetworkSystem.getInstance(); // Starts with the sample data
+        Session owner = signUp(system, "stress_owner");
+        // Private, so follows become requests for the owner to approve (set before any thread starts)
+        ((RegularUser) owner.getUser()).setPrivateAccount(true);
+        List<Session> sessions = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            sessions.add(signUp(system, "stress_" + t));
+        }
+        Post[] targets = new Post[TARGET_POSTS];
+        for (int i = 0; i < TARGET_POSTS; i++) {
+            targets[i] = system.createTextPost(owner, "stress target " + i);
+        }
+
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        int[] duplicates = new int[threads];
+        int[][] likeToggles = new int[threads][TARGET_POSTS];
+        int[] commentsPerTarget = new int[TARGET_POSTS];
+        for (int i = 0; i < operations; i++) {
+            commentsPerTarget[i % TARGET_POSTS] += threads;
+        }
+
+        System.out.println("Threads: " + threads + ", operations per thread: " + operations);
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        long started = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(pool.submit(() -> {
+                start.await();
+                Session me = sessions.get(thread);
+                system.followUser(me, owner.getUser().getId());
+                for (int i = 0; i < operations; i++) {
+                    int target = i % TARGET_POSTS;
+                    if ((i / TARGET_POSTS + thread) % 3 != 0) { // Uneven, so some likes stay
+                        system.likePost(me, targets[target].getId());
+                        likeToggles[thread][target]++;
+                    }
+                    Comment comment = system.addComment(me, targets[target].getId(), "stress comment " + thread + " " + i);
+                    if (comment == null || !ids.add(comment.getId())) {
+                        duplicates[thread]++;
+                    }
+                    if (i % POST_EVERY == 0) {
+                        Post post = system.createTextPost(me, "stress post " + thread + " " + i);
+                        if (post == null || !ids.add(post.getId())) {
+                            duplicates[thread]++;
+                        }
+                    }
+                    system.getFeedPage(me, null, 20);
+                    system.searchPosts(me, "stress", 5);
+                }
+                return null;
+            }));
+        }
+        Future<Integer> approver = pool.submit(() -> {
+            start.await();
+            int approved = 0;
+            long deadline = System.currentTimeMillis() + APPROVE_TIMEOUT_MS;
+            while (approved < threads && System.currentTimeMillis() < deadline) {
+                for (String requesterId : system.getPendingFollowRequests(owner)) {
+                    if (system.approveFollowRequest(owner, requesterId)) {
+                        approved++;
+                    }
+                }
+                Thread.yield();
+            }
+            return approved;
+        });
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        int approved = approver.get();
+        pool.shutdown();
+        System.out.printf("Done in %d ms%n", (System.nanoTime() - started) / 1_000_000);
+
+        // Memory
+        for (int i = 0; i < TARGET_POSTS; i++) {
+            int likes = 0;
+            for (int t = 0; t < threads; t++) {
+                likes += likeToggles[t][i] % 2; // Each like toggles
+            }
+            check("likes on target " + i, likes, targets[i].getLikeCount());
+            check("comments on target " + i, commentsPerTarget[i], targets[i].getCommentCount());
+        }
+        int duplicated = 0;
+        for (int count : duplicates) {
+            duplicated += count;
+        }
+        check("duplicate or missing ids", 0, duplicated);
+        check("follow requests approved", threads, approved);
+        check("owner followers", threads, owner.getUser().getFollowerCount());
+
+        // Disk
+        system.whenPersisted().join();
+        DataPersistence.LoadResult loaded = DataPersistence.loadData();
+        check("posts on disk", system.getAllPosts().size(), loaded.posts.size());
+        for (Post target : targets) {
+            Post stored = null;
+            for (Post post : loaded.posts) {
+                if (post.getId().equals(target.getId())) {
+                    stored = post;
+                }
+            }
+            check("likes on disk for " + target.getId(), target.getLikeCount(), stored != null ? stored.getLikeCount() : -1);
+            check("comments on disk for " + target.getId(), target.getCommentCount(),
+                  stored != null ? stored.getCommentCount() : -1);
+        }
+        int storedFollowers = -1;
+        for (User user : loaded.users) {
+            if (user.getId().equals(owner.getUser().getId())) {
+                storedFollowers = user.getFollowerCount();
+            }
+        }
+        check("owner followers on disk", threads, storedFollowers);
+
+        System.out.println(failures == 0 ? "PASS" : "FAIL: " + failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static Session signUp(SocialNetworkSystem system, String username) {
+        system.registerUser(username, "stress123", "Stress " + username, username + "@stress.test", 25, false);
+        return system.openSession(username, "stress123");
+    }
+
+    private static void check(String name, long expected, long actual) {
+        boolean ok = expected == actual;
+        if (!ok) {
+            failures++;
+        }
+        System.out.printf("%-32s expected %8d, got %8d  %s%n", name, expected, actual, ok ? "ok" : "FAILED");
+    }
+}
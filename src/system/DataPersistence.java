@@ -2,12 +2,20 @@ package system;
 
 import models.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import javax.crypto.Cipher;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
 
 /**
  * DataPersistence - Handles saving and loading application data
@@ -19,138 +27,808 @@ public class DataPersistence {
     private static final String COUNTERS_FILE = DATA_DIR + File.separator + "counters.dat";
     private static final String VERIFICATION_REQUESTS_FILE = DATA_DIR + File.separator + "verification_requests.dat";
     private static final String COMMENT_REPORTS_FILE = DATA_DIR + File.separator + "comment_reports.dat";
+    private static final String JOURNAL_FILE = DATA_DIR + File.separator + "journal.log";
     
-    // Encryption key 
-    private static final String ENCRYPTION_KEY_STRING = "SocialNetwork2024!"; // 16 characters for AES-128
-    private static final String ALGORITHM = "AES";
-    private static final String TRANSFORMATION = "AES";
+    // Users and posts live in segment files, so a change only rewrites its own segment
+    private static final SegmentTracker USER_SEGMENTS =
+        new SegmentTracker(DATA_DIR + File.separator + "users", USERS_FILE);
+    private static final SegmentTracker POST_SEGMENTS =
+        new SegmentTracker(DATA_DIR + File.separator + "posts", POSTS_FILE);
     
-    /**
-     * Get the encryption key
-     */
-    private static SecretKey getSecretKey() {
-        byte[] keyBytes = ENCRYPTION_KEY_STRING.getBytes();
-        // Ensure key is exactly 16 bytes for AES-128
-        byte[] key = new byte[16];
-        System.arraycopy(keyBytes, 0, key, 0, Math.min(keyBytes.length, 16));
-        return new SecretKeySpec(key, ALGORITHM);
-    }
+    // Checksum trailer at the end of every data file
+    private static final int TRAILER_MAGIC = 0x53435243; // "SCRC"
+    private static final int TRAILER_SIZE = 12;
+    
+    // Threads used to read the data files in parallel at startup
+    private static final int LOADER_THREADS = Math.max(2, Math.min(5, Runtime.getRuntime().availableProcessors()));
     
-    // Save all data to files
+    // Journal operations
+    public static final byte OP_UPSERT_USER = 1;
+    public static final byte OP_UPSERT_POST = 2;
+    public static final byte OP_DELETE_POST = 3;
+    public static final byte OP_UPSERT_VERIFICATION_REQUEST = 4;
+    public static final byte OP_UPSERT_COMMENT_REPORT = 5;
+    
+    // Save all data to files (checkpoint: changed segments, then the journal is cleared)
     public static void saveData(ArrayList<User> users, ArrayList<Post> posts, 
                                 int userCounter, int postCounter, int commentCounter,
                                 int reportCounter,
                                 ArrayList<VerificationRequest> verificationRequests,
                                 ArrayList<CommentReport> commentReports) {
-        // Create data folder if it doesn't exist
-        new File(DATA_DIR).mkdirs();
+        writeSnapshot(encodeSnapshot(users, posts, userCounter, postCounter, commentCounter,
+                                     reportCounter, verificationRequests, commentReports));
+    }
+    
+    /**
+     * Snapshot - Encoded (not yet encrypted) contents of the data files that changed.
+     * Encoding happens on the calling thread so the data can keep changing
+     * while the snapshot is written in the background.
+     */
+    public static class Snapshot {
+        private final LinkedHashMap<String, byte[]> files = new LinkedHashMap<>();
+        // Segments this snapshot writes (full takes: other files in their directory are stale)
+        private final List<SegmentTracker.Take> takes = new ArrayList<>();
         
-        // Save each type of data
-        saveToFile(USERS_FILE, users);
-        saveToFile(POSTS_FILE, posts);
-        saveToFile(COUNTERS_FILE, new int[]{userCounter, postCounter, commentCounter, reportCounter});
-        saveToFile(VERIFICATION_REQUESTS_FILE, verificationRequests);
-        saveToFile(COMMENT_REPORTS_FILE, commentReports);
+        /**
+         * Take over the files of an older snapshot that was never written.
+         * Files in this snapshot are newer and win.
+         */
+        public void absorb(Snapshot older) {
+            for (Map.Entry<String, byte[]> file : older.files.entrySet()) {
+                files.putIfAbsent(file.getKey(), file.getValue());
+            }
+            takes.addAll(older.takes);
+        }
+        
+        // Segments are no longer in flight once the snapshot is written (or failed)
+        private void finish() {
+            for (SegmentTracker.Take take : takes) {
+                take.tracker.finish(take);
+            }
+        }
     }
     
-    // Load all data from files
-    @SuppressWarnings("unchecked")
-    public static LoadResult loadData() {
-        LoadResult result = new LoadResult();
+    /**
+     * Mark every segment as changed, for changes that did not go through the journal
+     */
+    public static void markAllDirty() {
+        USER_SEGMENTS.markAllDirty();
+        POST_SEGMENTS.markAllDirty();
+    }
+    
+    /**
+     * True if the post is on disk as it is in memory, so its body may be dropped and read back
+     */
+    public static boolean isPostPersisted(String postId) {
+        return POST_SEGMENTS.isPersisted(postId);
+    }
+    
+    /**
+     * Read every post stored in the same segment as postId (for lazy body loading)
+     */
+    public static ArrayList<Post> loadPostSegment(String postId) throws IOException {
+        File file = new File(POST_SEGMENTS.fileFor(SegmentTracker.segmentOf(postId)));
+        byte[] fileBytes = Files.readAllBytes(file.toPath());
+        int length = verifiedCiphertextLength(fileBytes);
+        if (length < 0 || !PersistenceCrypto.isSealed(fileBytes, 0, length)) {
+            throw new IOException("Not a segment file: " + file.getPath());
+        }
+        DataInputStream in = new DataInputStream(PersistenceCrypto.open(fileBytes, 0, length));
+        return BinaryCodec.readPosts(in, BinaryCodec.readHeader(in));
+    }
+    
+    public static Snapshot encodeSnapshot(List<User> users, List<Post> posts, 
+                                          int userCounter, int postCounter, int commentCounter,
+                                          int reportCounter,
+                                          List<VerificationRequest> verificationRequests,
+                                          List<CommentReport> commentReports) {
+        int[] counters = {userCounter, postCounter, commentCounter, reportCounter};
+        Snapshot snapshot = new Snapshot();
+        try {
+            encodeSegments(snapshot, USER_SEGMENTS.takeDirty(), users, User::getId, BinaryCodec::writeUsers);
+            encodeSegments(snapshot, POST_SEGMENTS.takeDirty(), posts, Post::getId, BinaryCodec::writePosts);
+            snapshot.files.put(COUNTERS_FILE, encode(out -> BinaryCodec.writeCounters(out, counters)));
+            snapshot.files.put(VERIFICATION_REQUESTS_FILE, encode(out -> BinaryCodec.writeVerificationRequests(out, verificationRequests)));
+            snapshot.files.put(COMMENT_REPORTS_FILE, encode(out -> BinaryCodec.writeCommentReports(out, commentReports)));
+        } catch (IOException | RuntimeException e) {
+            // Taken segments were not encoded, make sure the next snapshot writes them
+            markAllDirty();
+            snapshot.finish();
+            // IOException only comes from the underlying streams, which are in memory here
+            throw (e instanceof IOException) ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Write every file of a snapshot, then clear the journal it supersedes.
+     * Returns false if some file could not be written.
+     */
+    public static boolean writeSnapshot(Snapshot snapshot) {
+        // Create data folders if they don't exist
+        new File(USER_SEGMENTS.getDirectory()).mkdirs();
+        new File(POST_SEGMENTS.getDirectory()).mkdirs();
         
-        // Load users
-        Object usersObj = loadFromFile(USERS_FILE);
-        if (usersObj != null) {
-            result.users = (ArrayList<User>) usersObj;
+        boolean complete = true;
+        for (Map.Entry<String, byte[]> file : snapshot.files.entrySet()) {
+            complete &= saveToFile(file.getKey(), file.getValue());
+        }
+        if (!complete) {
+            // Keep the journal (replay is idempotent) and write everything next time
+            System.err.println("Snapshot incomplete, keeping the journal");
+            markAllDirty();
+            snapshot.finish();
+            return false;
         }
         
-        // Load posts
-        Object postsObj = loadFromFile(POSTS_FILE);
-        if (postsObj != null) {
-            result.posts = (ArrayList<Post>) postsObj;
+        // Remove segments (and the old single files) that a full rewrite no longer has
+        for (SegmentTracker.Take take : snapshot.takes) {
+            if (!take.isFull()) {
+                continue;
+            }
+            for (String file : take.tracker.existingFiles()) {
+                if (!snapshot.files.containsKey(file)) {
+                    new File(file).delete();
+                }
+            }
+            new File(take.tracker.getLegacyFile()).delete();
         }
         
-        // Load counters
-        Object countersObj = loadFromFile(COUNTERS_FILE);
-        if (countersObj != null) {
-            int[] counters = (int[]) countersObj;
-            result.userIdCounter = counters[0];
-            result.postIdCounter = counters[1];
-            result.commentIdCounter = counters[2];
-            // Handle backward compatibility: old files might only have 3 counters
-            if (counters.length > 3) {
-                result.reportIdCounter = counters[3];
+        // Snapshot now contains everything the journal recorded
+        clearJournal();
+        snapshot.finish();
+        return true;
+    }
+    
+    /**
+     * Writes a list of entities after the header
+     */
+    private interface ListWriter<T> {
+        void write(DataOutputStream out, List<T> items) throws IOException;
+    }
+    
+    // Helper: Encode the dirty segments of an entity list (all of them after a full invalidation)
+    private static <T> void encodeSegments(Snapshot snapshot, SegmentTracker.Take take, List<T> items,
+                                           java.util.function.Function<T, String> idOf,
+                                           ListWriter<T> writer) throws IOException {
+        snapshot.takes.add(take);
+        Set<Integer> dirty = take.segments;
+        TreeMap<Integer, List<T>> buckets = new TreeMap<>();
+        if (dirty != null) {
+            // Emptied segments still need writing, so start with every dirty one
+            for (int segment : dirty) {
+                buckets.put(segment, new ArrayList<>());
             }
         }
+        for (T item : items) {
+            int segment = SegmentTracker.segmentOf(idOf.apply(item));
+            List<T> bucket = (dirty == null) ? buckets.computeIfAbsent(segment, k -> new ArrayList<>())
+                                             : buckets.get(segment);
+            if (bucket != null) {
+                bucket.add(item);
+            }
+        }
+        for (Map.Entry<Integer, List<T>> bucket : buckets.entrySet()) {
+            snapshot.files.put(take.tracker.fileFor(bucket.getKey()), encode(out -> writer.write(out, bucket.getValue())));
+        }
+    }
+    
+    // Helper: Encode a header plus the writer's data into memory
+    private static byte[] encode(BinaryCodec.Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        BinaryCodec.writeHeader(out);
+        writer.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+    
+    // Load all data from files (in parallel, each file has its own cipher stream)
+    public static LoadResult loadData() {
+        return loadData(null);
+    }
+    
+    /**
+     * Load all data, with post bodies from segment files dropped right after reading
+     * (only headers stay in memory) when lazyBodies is given
+     */
+    @SuppressWarnings("unchecked")
+    public static LoadResult loadData(Post.BodySource lazyBodies) {
+        LoadResult result = new LoadResult();
+        
+        ExecutorService loaders = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "data-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Object>> userLoads = submitSegmentLoads(loaders, USER_SEGMENTS, BinaryCodec::readUsers, result, null);
+            List<Future<Object>> postLoads = submitSegmentLoads(loaders, POST_SEGMENTS, BinaryCodec::readPosts, result,
+                lazyBodies == null ? null : loaded -> {
+                    for (Object post : (ArrayList<?>) loaded) {
+                        ((Post) post).unloadBody();
+                        ((Post) post).setBodySource(lazyBodies);
+                    }
+                });
+            Future<Object> countersLoad = loaders.submit(() -> loadFromFile(COUNTERS_FILE, BinaryCodec::readCounters, result));
+            Future<Object> verificationRequestsLoad = loaders.submit(
+                () -> loadFromFile(VERIFICATION_REQUESTS_FILE, BinaryCodec::readVerificationRequests, result));
+            Future<Object> commentReportsLoad = loaders.submit(
+                () -> loadFromFile(COMMENT_REPORTS_FILE, BinaryCodec::readCommentReports, result));
+            
+            // Load users
+            Object usersObj = joinSegments(userLoads);
+            if (usersObj != null) {
+                result.users = (ArrayList<User>) usersObj;
+            }
+            
+            // Load posts
+            Object postsObj = joinSegments(postLoads);
+            if (postsObj != null) {
+                result.posts = (ArrayList<Post>) postsObj;
+            }
+            
+            // Load counters
+            Object countersObj = countersLoad.get();
+            if (countersObj != null) {
+                int[] counters = (int[]) countersObj;
+                result.userIdCounter = counters[0];
+                result.postIdCounter = counters[1];
+                result.commentIdCounter = counters[2];
+                // Handle backward compatibility: old files might only have 3 counters
+                if (counters.length > 3) {
+                    result.reportIdCounter = counters[3];
+                }
+            }
+            
+            // Load verification requests
+            Object verificationRequestsObj = verificationRequestsLoad.get();
+            if (verificationRequestsObj != null) {
+                // Handle backward compatibility: old files might have ArrayList<String>
+                if (verificationRequestsObj instanceof ArrayList) {
+                    ArrayList<?> list = (ArrayList<?>) verificationRequestsObj;
+                    if (!list.isEmpty() && list.get(0) instanceof VerificationRequest) {
+                        result.verificationRequests = (ArrayList<VerificationRequest>) verificationRequestsObj;
+                    } else {
+                        // Old format - convert String list to empty VerificationRequest list
+                        result.verificationRequests = new ArrayList<>();
+                    }
+                }
+            }
+            
+            // Load comment reports
+            Object commentReportsObj = commentReportsLoad.get();
+            if (commentReportsObj != null) {
+                result.commentReports = (ArrayList<CommentReport>) commentReportsObj;
+            }
+            
+            // Segment files match memory now, replay marks what the journal changes
+            USER_SEGMENTS.markAllClean();
+            POST_SEGMENTS.markAllClean();
+            
+            // Replay mutations recorded since the last snapshot (needs every file loaded)
+            result.journalRecordCount = replayJournal(result);
+            if (result.needsMigration) {
+                markAllDirty();
+            }
+            
+            result.success = (usersObj != null || result.journalRecordCount > 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Loading interrupted");
+        } catch (ExecutionException e) {
+            System.err.println("Error loading data: " + e.getCause());
+        } finally {
+            loaders.shutdown();
+        }
+        return result;
+    }
+    
+    /**
+     * Helper: Start loading an entity list, from its segments or from the single file used before them.
+     * onSegmentLoaded (if given) sees each segment's list as soon as it is read.
+     */
+    private static List<Future<Object>> submitSegmentLoads(ExecutorService loaders, SegmentTracker segments,
+                                                           BinaryCodec.Reader<?> reader, LoadResult result,
+                                                           java.util.function.Consumer<Object> onSegmentLoaded) {
+        List<Future<Object>> loads = new ArrayList<>();
+        if (new File(segments.getLegacyFile()).exists()) {
+            // Only deleted once every segment is written, so it is complete if present
+            result.needsMigration = true;
+            loads.add(loaders.submit(() -> loadFromFile(segments.getLegacyFile(), reader, result)));
+            return loads;
+        }
+        for (String file : segments.existingFiles()) {
+            loads.add(loaders.submit(() -> {
+                Object loaded = loadFromFile(file, reader, result);
+                if (loaded != null && onSegmentLoaded != null) {
+                    onSegmentLoaded.accept(loaded);
+                }
+                return loaded;
+            }));
+        }
+        return loads;
+    }
+    
+    // Helper: Concatenate loaded segments in segment order, null if none could be loaded
+    private static Object joinSegments(List<Future<Object>> loads) throws InterruptedException, ExecutionException {
+        ArrayList<Object> joined = null;
+        for (Future<Object> load : loads) {
+            Object part = load.get();
+            if (part instanceof ArrayList) {
+                if (joined == null) {
+                    joined = new ArrayList<>();
+                }
+                joined.addAll((ArrayList<?>) part);
+            }
+        }
+        return joined;
+    }
+    
+    // ==================== JOURNAL ====================
+    
+    /**
+     * Journal entry - a single entity change inside a journal record
+     */
+    public static class JournalEntry {
+        private final byte op;
+        private final Object payload;
         
-        // Load verification requests
-        Object verificationRequestsObj = loadFromFile(VERIFICATION_REQUESTS_FILE);
-        if (verificationRequestsObj != null) {
-            // Handle backward compatibility: old files might have ArrayList<String>
-            if (verificationRequestsObj instanceof ArrayList) {
-                ArrayList<?> list = (ArrayList<?>) verificationRequestsObj;
-                if (!list.isEmpty() && list.get(0) instanceof VerificationRequest) {
-                    result.verificationRequests = (ArrayList<VerificationRequest>) verificationRequestsObj;
+        private JournalEntry(byte op, Object payload) {
+            this.op = op;
+            this.payload = payload;
+        }
+    }
+    
+    public static JournalEntry upsert(User user) {
+        return new JournalEntry(OP_UPSERT_USER, user);
+    }
+    
+    public static JournalEntry upsert(Post post) {
+        return new JournalEntry(OP_UPSERT_POST, post);
+    }
+    
+    public static JournalEntry upsert(VerificationRequest request) {
+        return new JournalEntry(OP_UPSERT_VERIFICATION_REQUEST, request);
+    }
+    
+    public static JournalEntry upsert(CommentReport report) {
+        return new JournalEntry(OP_UPSERT_COMMENT_REPORT, report);
+    }
+    
+    public static JournalEntry deletePost(String postId) {
+        return new JournalEntry(OP_DELETE_POST, postId);
+    }
+    
+    /**
+     * Encode one mutation as a journal record. The entries of a record are applied
+     * together on replay. The record is [header][counters][entry count][op, payload]...
+     */
+    public static byte[] encodeJournalRecord(JournalEntry[] entries, int userCounter, int postCounter,
+                                             int commentCounter, int reportCounter) {
+        for (JournalEntry entry : entries) {
+            markDirty(entry);
+        }
+        try {
+            return encode(out -> {
+                BinaryCodec.writeCounters(out, new int[]{userCounter, postCounter, commentCounter, reportCounter});
+                out.writeInt(entries.length);
+                for (JournalEntry entry : entries) {
+                    writeEntry(out, entry);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Append encoded records to the journal with a single fsync (group commit).
+     * Each record is sealed on its own and stored as [length][sealed record].
+     */
+    public static boolean appendJournal(List<byte[]> records) {
+        new File(DATA_DIR).mkdirs();
+        try {
+            FileOutputStream fileOut = new FileOutputStream(JOURNAL_FILE, true);
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(fileOut));
+            for (byte[] record : records) {
+                byte[] encrypted = PersistenceCrypto.seal(record);
+                dataOut.writeInt(encrypted.length);
+                dataOut.write(encrypted);
+            }
+            dataOut.flush();
+            fileOut.getFD().sync();
+            dataOut.close();
+            return true;
+        } catch (Exception e) {
+            System.out.println("Error appending to journal: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    // Helper: Remove the journal once a snapshot covers it
+    private static void clearJournal() {
+        File journal = new File(JOURNAL_FILE);
+        if (journal.exists() && !journal.delete()) {
+            System.err.println("Could not clear journal: " + JOURNAL_FILE);
+        }
+    }
+    
+    // Helper: Apply journal records on top of the loaded snapshot, returns the number replayed
+    private static int replayJournal(LoadResult result) {
+        File journal = new File(JOURNAL_FILE);
+        if (!journal.exists()) {
+            return 0;
+        }
+        int replayed = 0;
+        long validLength = 0; // Bytes up to the end of the last record replayed
+        Replay replay = new Replay(result);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            while (true) {
+                byte[] encrypted;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > journal.length()) {
+                        break; // Garbage length - torn tail
+                    }
+                    encrypted = new byte[length];
+                    in.readFully(encrypted);
+                } catch (EOFException eof) {
+                    break; // End of journal (or a record cut short by a crash)
+                }
+                
+                // Records from before authenticated encryption are still replayed once
+                byte[] record;
+                if (PersistenceCrypto.isSealed(encrypted, 0, encrypted.length)) {
+                    record = PersistenceCrypto.open(encrypted);
                 } else {
-                    // Old format - convert String list to empty VerificationRequest list
-                    result.verificationRequests = new ArrayList<>();
+                    record = PersistenceCrypto.openLegacy(encrypted);
+                    result.needsMigration = true;
                 }
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                int version = BinaryCodec.readHeader(recordIn);
+                int[] counters = BinaryCodec.readCounters(recordIn, version);
+                int entryCount = recordIn.readInt();
+                JournalEntry[] entries = new JournalEntry[entryCount];
+                for (int i = 0; i < entryCount; i++) {
+                    entries[i] = readEntry(recordIn, version);
+                }
+                
+                for (JournalEntry entry : entries) {
+                    applyEntry(replay, entry);
+                }
+                result.userIdCounter = Math.max(result.userIdCounter, counters[0]);
+                result.postIdCounter = Math.max(result.postIdCounter, counters[1]);
+                result.commentIdCounter = Math.max(result.commentIdCounter, counters[2]);
+                result.reportIdCounter = Math.max(result.reportIdCounter, counters[3]);
+                replayed++;
+                validLength += 4 + encrypted.length;
+            }
+        } catch (Exception e) {
+            // Keep everything replayed so far, a damaged record ends the journal
+            System.err.println("Journal replay stopped after " + replayed + " records: " + e.getMessage());
+        }
+        replay.finish();
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " journal records from " + JOURNAL_FILE);
+        }
+        // Records are appended, so anything left after the last good one would hide them
+        if (validLength < journal.length() && !truncateJournal(journal, validLength)) {
+            result.needsMigration = true; // A full snapshot replaces the journal instead
+        }
+        return replayed;
+    }
+    
+    // Helper: Cut an unreadable tail off the journal, keeping a copy of it for manual recovery
+    private static boolean truncateJournal(File journal, long validLength) {
+        File aside = new File(journal.getPath() + ".corrupt-" + System.currentTimeMillis());
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            try (FileChannel copy = FileChannel.open(aside.toPath(), StandardOpenOption.CREATE_NEW,
+                                                     StandardOpenOption.WRITE)) {
+                channel.transferTo(validLength, size - validLength, copy);
             }
+            channel.truncate(validLength);
+            channel.force(true);
+            System.err.println("Cut " + (size - validLength) + " unreadable bytes off the journal, kept in " +
+                               aside.getPath());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not truncate the journal: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // Helper: Encode one journal entry as [op][payload]
+    private static void writeEntry(DataOutputStream out, JournalEntry entry) throws IOException {
+        out.writeByte(entry.op);
+        switch (entry.op) {
+            case OP_UPSERT_USER: BinaryCodec.writeUser(out, (User) entry.payload); break;
+            case OP_UPSERT_POST: BinaryCodec.writePost(out, (Post) entry.payload); break;
+            case OP_DELETE_POST: BinaryIO.writeString(out, (String) entry.payload); break;
+            case OP_UPSERT_VERIFICATION_REQUEST: ((VerificationRequest) entry.payload).writeTo(out); break;
+            case OP_UPSERT_COMMENT_REPORT: ((CommentReport) entry.payload).writeTo(out); break;
+            default: throw new IOException("Unknown journal operation: " + entry.op);
+        }
+    }
+    
+    // Helper: Decode one journal entry written by writeEntry
+    private static JournalEntry readEntry(DataInputStream in, int version) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case OP_UPSERT_USER: return new JournalEntry(op, BinaryCodec.readUser(in, version));
+            case OP_UPSERT_POST: return new JournalEntry(op, BinaryCodec.readPost(in, version));
+            case OP_DELETE_POST: return new JournalEntry(op, BinaryIO.readString(in));
+            case OP_UPSERT_VERIFICATION_REQUEST: return new JournalEntry(op, new VerificationRequest(in, version));
+            case OP_UPSERT_COMMENT_REPORT: return new JournalEntry(op, new CommentReport(in, version));
+            default: throw new IOException("Unknown journal operation: " + op);
+        }
+    }
+    
+    // Helper: Mark the segment a journal entry changes, so the next snapshot rewrites it
+    private static void markDirty(JournalEntry entry) {
+        switch (entry.op) {
+            case OP_UPSERT_USER: USER_SEGMENTS.markDirty(((User) entry.payload).getId()); break;
+            case OP_UPSERT_POST: POST_SEGMENTS.markDirty(((Post) entry.payload).getId()); break;
+            case OP_DELETE_POST: POST_SEGMENTS.markDirty((String) entry.payload); break;
+            default: break; // Requests and reports are small and always written
+        }
+    }
+    
+    // Helper: Apply a single journal entry (upserts are idempotent, so replaying twice is safe)
+    private static void applyEntry(Replay replay, JournalEntry entry) {
+        markDirty(entry); // Not in the segment files yet
+        switch (entry.op) {
+            case OP_UPSERT_USER: replay.users.upsert((User) entry.payload); break;
+            case OP_UPSERT_POST: replay.posts.upsert((Post) entry.payload); break;
+            case OP_DELETE_POST: replay.posts.remove(entry.payload); break;
+            case OP_UPSERT_VERIFICATION_REQUEST: replay.verificationRequests.upsert((VerificationRequest) entry.payload); break;
+            case OP_UPSERT_COMMENT_REPORT: replay.commentReports.upsert((CommentReport) entry.payload); break;
+            default:
+                System.err.println("Unknown journal operation: " + entry.op);
         }
+    }
+    
+    /**
+     * Replay - The loaded lists, keyed so each replayed entry is applied in O(1)
+     */
+    private static final class Replay {
+        final KeyedList<User> users;
+        final KeyedList<Post> posts;
+        final KeyedList<VerificationRequest> verificationRequests;
+        final KeyedList<CommentReport> commentReports;
         
-        // Load comment reports
-        Object commentReportsObj = loadFromFile(COMMENT_REPORTS_FILE);
-        if (commentReportsObj != null) {
-            result.commentReports = (ArrayList<CommentReport>) commentReportsObj;
+        Replay(LoadResult result) {
+            users = new KeyedList<>(result.users, User::getId);
+            posts = new KeyedList<>(result.posts, Post::getId);
+            // Requests have no id - a user and a timestamp identify one
+            verificationRequests = new KeyedList<>(result.verificationRequests,
+                                                   r -> List.of(r.getUserId(), r.getTimestamp()));
+            commentReports = new KeyedList<>(result.commentReports, CommentReport::getReportId);
         }
         
-        result.success = (usersObj != null);
-        return result;
+        void finish() {
+            users.finish();
+            posts.finish();
+            verificationRequests.finish();
+            commentReports.finish();
+        }
+    }
+    
+    /**
+     * KeyedList - A list indexed by key (built on first use). Replacing keeps the list
+     * order, removing leaves an empty slot that finish() compacts in one pass.
+     */
+    private static final class KeyedList<T> {
+        private final ArrayList<T> list;
+        private final java.util.function.Function<T, Object> keyOf;
+        private HashMap<Object, Integer> slots;
+        private boolean removed;
+        
+        KeyedList(ArrayList<T> list, java.util.function.Function<T, Object> keyOf) {
+            this.list = list;
+            this.keyOf = keyOf;
+        }
+        
+        void upsert(T item) {
+            Object key = keyOf.apply(item);
+            Integer slot = slots().get(key);
+            if (slot != null) {
+                list.set(slot, item);
+            } else {
+                slots.put(key, list.size());
+                list.add(item);
+            }
+        }
+        
+        void remove(Object key) {
+            Integer slot = slots().remove(key);
+            if (slot != null) {
+                list.set(slot, null);
+                removed = true;
+            }
+        }
+        
+        void finish() {
+            if (removed) {
+                list.removeIf(Objects::isNull);
+            }
+        }
+        
+        private HashMap<Object, Integer> slots() {
+            if (slots == null) {
+                slots = new HashMap<>(list.size() * 2);
+                for (int i = 0; i < list.size(); i++) {
+                    slots.put(keyOf.apply(list.get(i)), i);
+                }
+            }
+            return slots;
+        }
     }
     
-    // Helper: Save any object to a file (with encryption)
-    private static void saveToFile(String filename, Object data) {
+    /**
+     * Helper: Save encoded data to a file (with encryption), crash-safe.
+     * The data goes to a temp file with a checksum trailer, is fsync'd and then
+     * renamed over the live file, so the live file is always old or new, never torn.
+     * File layout: [sealed data][int sealed length][int CRC32][int TRAILER_MAGIC]
+     */
+    private static boolean saveToFile(String filename, byte[] data) {
+        File file = new File(filename);
+        File tempFile = new File(filename + ".tmp");
         try {
-            // Create cipher for encryption
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.ENCRYPT_MODE, getSecretKey());
-            
-            // Write encrypted data
-            FileOutputStream fileOut = new FileOutputStream(filename);
-            CipherOutputStream cipherOut = new CipherOutputStream(fileOut, cipher);
-            ObjectOutputStream out = new ObjectOutputStream(cipherOut);
+            // Encrypt straight into the temp file, checksumming on the way
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+                CRC32 crc = new CRC32();
+                PersistenceCrypto.seal(data, new CheckedOutputStream(out, crc));
+                out.writeInt((int) PersistenceCrypto.sealedLength(data.length));
+                out.writeInt((int) crc.getValue());
+                out.writeInt(TRAILER_MAGIC);
+                out.flush();
+                fileOut.getFD().sync();
+            }
             
-            out.writeObject(data);
-            out.close();
-            cipherOut.close();
-            fileOut.close();
+            moveIntoPlace(tempFile, file);
+            return true;
         } catch (Exception e) {
             System.out.println("Error saving " + filename + ": " + e.getMessage());
             e.printStackTrace();
+            tempFile.delete();
+            return false;
+        }
+    }
+    
+    // Helper: Atomically replace target with source (plain replace where atomic moves are unsupported)
+    private static void moveIntoPlace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Make the rename itself durable (not possible on every platform, e.g. Windows)
+        try (FileChannel dir = FileChannel.open(target.getAbsoluteFile().getParentFile().toPath(),
+                                                StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Best effort only
+        }
+    }
+    
+    /**
+     * Helper: Return the length of the ciphertext in a checksummed file, or -1 if the file
+     * has no trailer (written before checksums existed). Throws if the checksum does not match.
+     */
+    private static int verifiedCiphertextLength(byte[] fileBytes) throws IOException {
+        if (fileBytes.length < TRAILER_SIZE) {
+            return -1;
+        }
+        ByteBuffer trailer = ByteBuffer.wrap(fileBytes, fileBytes.length - TRAILER_SIZE, TRAILER_SIZE);
+        int length = trailer.getInt();
+        int storedCrc = trailer.getInt();
+        if (trailer.getInt() != TRAILER_MAGIC) {
+            return -1;
         }
+        if (length != fileBytes.length - TRAILER_SIZE) {
+            throw new IOException("Length mismatch, file is truncated or damaged");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(fileBytes, 0, length);
+        if ((int) crc.getValue() != storedCrc) {
+            throw new IOException("Checksum mismatch, file is damaged");
+        }
+        return length;
     }
     
-    // Helper: Load any object from a file (with decryption)
-    private static Object loadFromFile(String filename) {
+    // Helper: Keep a damaged file for manual recovery instead of overwriting it later
+    private static void quarantine(File file) {
+        File aside = new File(file.getPath() + ".corrupt-" + System.currentTimeMillis());
+        if (file.renameTo(aside)) {
+            System.err.println("Moved damaged file to " + aside.getPath());
+        }
+    }
+    
+    /**
+     * Helper: Load data from a file (with decryption).
+     * Checksummed files are verified before decrypting, and a damaged one is skipped
+     * (and set aside) right away. Older files without a trailer go through the legacy path.
+     */
+    private static Object loadFromFile(String filename, BinaryCodec.Reader<?> reader, LoadResult result) {
         File file = new File(filename);
         if (!file.exists()) {
             System.out.println("File does not exist: " + filename);
             return null;
         }
+        
+        byte[] fileBytes;
+        int length;
+        try {
+            fileBytes = Files.readAllBytes(file.toPath());
+            length = verifiedCiphertextLength(fileBytes);
+        } catch (IOException e) {
+            System.err.println("Skipping damaged file " + filename + ": " + e.getMessage());
+            quarantine(file);
+            return null;
+        }
+        if (length < 0) {
+            return loadLegacyFile(filename, reader, result);
+        }
+        
+        try {
+            InputStream plainIn;
+            if (PersistenceCrypto.isSealed(fileBytes, 0, length)) {
+                // Decrypted chunk by chunk while the reader consumes it
+                plainIn = PersistenceCrypto.open(fileBytes, 0, length);
+            } else {
+                // Checksummed but written with the old unauthenticated cipher
+                plainIn = new ByteArrayInputStream(PersistenceCrypto.openLegacy(Arrays.copyOf(fileBytes, length)));
+                result.needsMigration = true;
+            }
+            DataInputStream in = new DataInputStream(plainIn);
+            int version = BinaryCodec.readHeader(in);
+            Object data = reader.read(in, version);
+            System.out.println("Successfully loaded encrypted file: " + filename);
+            return data;
+        } catch (Exception e) {
+            // Checksum was fine, so this is a key or format problem rather than a torn write
+            System.err.println("Error reading file " + filename + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Helper: Load a file written before checksums were added.
+     * Files in the binary format go through the reader. Files from before the binary
+     * format (Java serialization, encrypted or plain) are still read and flag the
+     * result for migration, so the caller rewrites them in the new format.
+     */
+    private static Object loadLegacyFile(String filename, BinaryCodec.Reader<?> reader, LoadResult result) {
         try {
             // Try to load as encrypted file first
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.DECRYPT_MODE, getSecretKey());
+            FileInputStream fileIn = new FileInputStream(new File(filename));
+            BufferedInputStream plainIn = new BufferedInputStream(
+                new CipherInputStream(new BufferedInputStream(fileIn, 64 * 1024), PersistenceCrypto.legacyDecryptCipher()),
+                64 * 1024);
+            DataInputStream in = new DataInputStream(plainIn);
             
-            FileInputStream fileIn = new FileInputStream(filename);
-            CipherInputStream cipherIn = new CipherInputStream(fileIn, cipher);
-            ObjectInputStream in = new ObjectInputStream(cipherIn);
+            // Peek at the header to tell the binary format from legacy serialization
+            plainIn.mark(8);
+            int magic = in.readInt();
+            plainIn.reset();
             
-            Object data = in.readObject();
+            Object data;
+            if (magic == BinaryCodec.MAGIC) {
+                int version = BinaryCodec.readHeader(in);
+                data = reader.read(in, version);
+                System.out.println("Loaded file without checksum, will rewrite: " + filename);
+            } else {
+                data = new ObjectInputStream(plainIn).readObject();
+                System.out.println("Loaded legacy serialized file, will migrate: " + filename);
+            }
             in.close();
-            cipherIn.close();
-            fileIn.close();
-            System.out.println("Successfully loaded encrypted file: " + filename);
+            result.needsMigration = true; // Rewrite with a checksum trailer
             return data;
         } catch (Exception e) {
             // Check if this is a decryption error (file might be unencrypted)
@@ -166,14 +844,14 @@ public class DataPersistence {
                 System.err.println("Error decrypting file " + filename + ": " + e.getMessage());
             }
             
-            // Try loading as unencrypted
+            // Try loading as unencrypted (only ever written with Java serialization)
             try {
                 ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename));
                 Object data = in.readObject();
                 in.close();
-                // If successful, re-save as encrypted for future
+                // If successful, re-save as encrypted binary for future
                 System.out.println("Migrating " + filename + " to encrypted format...");
-                saveToFile(filename, data);
+                result.needsMigration = true;
                 return data;
             } catch (Exception e2) {
                 System.err.println("Failed to load file in any format: " + filename);
@@ -194,6 +872,8 @@ public class DataPersistence {
         public int reportIdCounter = 1;
         public ArrayList<VerificationRequest> verificationRequests = new ArrayList<>();
         public ArrayList<CommentReport> commentReports = new ArrayList<>();
+        public int journalRecordCount = 0;
+        public volatile boolean needsMigration = false; // Some files were in a legacy format (set by loader threads)
         public boolean success = false;
     }
 }
@@ -0,0 +1,364 @@
+package system;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MediaStore - Content-addressed copies of uploaded images and files
+ * An upload is copied into data/media under the SHA-256 of its content, so every
+ * distinct file is stored once however often it is uploaded, and posts keep working
+ * when the original is moved or deleted. Entities refer to it with a reference of
+ * the form "media:<hash>/<original file name>" instead of a path.
+ * Each blob has a reference count; a blob whose count drops to zero is deleted. The
+ * counts are kept in data/media/refs.dat, each change is appended to refs.log and
+ * the log is folded into refs.dat once it outgrows it, so a change costs one small
+ * write rather than rewriting every count. Counts are raised before the referencing change is
+ * journaled and lowered only after the change that drops a reference is on disk,
+ * so a crash can leave a blob behind but never lose one still referenced. If the
+ * counts can't be read they are recounted from the loaded data (see rebuildRefs).
+ * Values that are not references (paths stored before the store existed) are
+ * resolved as plain paths.
+ */
+public final class MediaStore {
+    private static final String PREFIX = "media:";
+    private static final String DIR = "data" + File.separator + "media";
+    private static final String REFS_FILE = DIR + File.separator + "refs.dat";
+    private static final String LOG_FILE = DIR + File.separator + "refs.log";
+    private static final int REFS_VERSION = 2; // 1 had no generation
+    private static final int MIN_LOG_ENTRIES = 1024; // Before the log is folded into refs.dat
+
+    private static final MediaStore INSTANCE = new MediaStore();
+
+    private final HashMap<String, Integer> refCounts = new HashMap<>(); // Hash -> references
+    private boolean refsLoaded;
+    private boolean refsLost; // Counts couldn't be read, so none are saved or trusted to reach zero
+    private long generation; // Of refs.dat, a log written for another generation is stale
+    private FileOutputStream logFile; // Open for appending, null until the first change
+    private DataOutputStream log;
+    private int logEntries;
+
+    private MediaStore() {
+    }
+
+    public static MediaStore getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== REFERENCES ====================
+
+    public static boolean isReference(String value) {
+        return hashOf(value) != null;
+    }
+
+    /**
+     * Content hash of a reference (null for plain paths)
+     */
+    public static String hashOf(String value) {
+        if (value == null || !value.startsWith(PREFIX)) {
+            return null;
+        }
+        int slash = value.indexOf('/', PREFIX.length());
+        String hash = value.substring(PREFIX.length(), slash >= 0 ? slash : value.length());
+        return hash.matches("[0-9a-f]{64}") ? hash : null; // Never a path of its own
+    }
+
+    /**
+     * File holding the media: the stored blob for a reference, the path itself otherwise
+     */
+    public File resolve(String value) {
+        String hash = hashOf(value);
+        if (hash == null) {
+            return new File(value);
+        }
+        return blobFile(hash);
+    }
+
+    // ==================== INGEST / RELEASE ====================
+
+    /**
+     * Store a file (if its content isn't stored yet) and count one more reference to it.
+     * References are passed through, counting one more reference. Returns the reference.
+     */
+    public String ingest(String path) throws IOException {
+        String hash = hashOf(path);
+        if (hash != null) {
+            acquire(hash);
+            return path;
+        }
+        File source = new File(path);
+        if (!source.isFile()) {
+            throw new FileNotFoundException(source.getName());
+        }
+        new File(DIR).mkdirs();
+
+        // Copy while hashing, then move into place under the hash unless already stored
+        File tempFile = File.createTempFile("upload", ".tmp", new File(DIR));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new FileInputStream(source);
+                 OutputStream out = new FileOutputStream(tempFile)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            hash = toHex(digest.digest());
+            synchronized (this) {
+                File blob = blobFile(hash);
+                if (!blob.isFile()) {
+                    blob.getParentFile().mkdirs();
+                    moveIntoPlace(tempFile, blob);
+                }
+                acquire(hash);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        } finally {
+            tempFile.delete();
+        }
+        return PREFIX + hash + "/" + source.getName();
+    }
+
+    /**
+     * Drop one reference (call once the change removing it is on disk). The blob is
+     * deleted with its last reference. Plain paths are ignored.
+     */
+    public synchronized void release(String value) {
+        String hash = hashOf(value);
+        if (hash == null) {
+            return;
+        }
+        loadRefs();
+        Integer count = refCounts.get(hash);
+        if (count == null) {
+            return; // Unknown, so it is left alone
+        }
+        if (count > 1) {
+            refCounts.put(hash, count - 1);
+        } else {
+            refCounts.remove(hash);
+            if (!refsLost && !blobFile(hash).delete() && blobFile(hash).exists()) {
+                System.err.println("Could not delete unused media " + hash);
+            }
+        }
+        logChange(hash, -1, false); // Losing it in a crash only keeps the blob longer
+    }
+
+    /**
+     * True if the saved counts could not be read, so rebuildRefs should be called
+     */
+    public synchronized boolean needsRebuild() {
+        loadRefs();
+        return refsLost;
+    }
+
+    /**
+     * Replace the counts with a recount of the given values (every media value held by
+     * the loaded data, once per holder). Plain paths are skipped.
+     */
+    public synchronized void rebuildRefs(Collection<String> values) {
+        loadRefs();
+        refCounts.clear();
+        for (String value : values) {
+            String hash = hashOf(value);
+            if (hash != null) {
+                refCounts.merge(hash, 1, Integer::sum);
+            }
+        }
+        refsLost = false;
+        saveRefs();
+        System.out.println("Recounted media references: " + refCounts.size() + " blobs in use");
+    }
+
+    public synchronized int getReferenceCount(String value) {
+        String hash = hashOf(value);
+        if (hash == null) {
+            return 0;
+        }
+        loadRefs();
+        return refCounts.getOrDefault(hash, 0);
+    }
+
+    private synchronized void acquire(String hash) {
+        loadRefs();
+        refCounts.merge(hash, 1, Integer::sum);
+        logChange(hash, 1, true); // On disk before anything refers to it
+    }
+
+    // ==================== FILES ====================
+
+    // Helper: Blobs are spread over subdirectories by the first two hex digits
+    private static File blobFile(String hash) {
+        String bucket = hash.length() >= 2 ? hash.substring(0, 2) : "00";
+        return new File(DIR + File.separator + bucket, hash);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void moveIntoPlace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Layout: version, generation, count, then per blob its hash and reference count.
+    // The log holds the generation it applies to, then per change a hash and +1 or -1.
+    private void loadRefs() {
+        if (refsLoaded) {
+            return;
+        }
+        refsLoaded = true;
+        File file = new File(REFS_FILE);
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                int version = in.readInt();
+                if (version != REFS_VERSION && version != 1) {
+                    throw new IOException("Unknown version");
+                }
+                generation = version >= 2 ? in.readLong() : 0;
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String hash = in.readUTF();
+                    refCounts.put(hash, in.readInt());
+                }
+            } catch (IOException e) {
+                // Without counts nothing is ever deleted, which is safe
+                System.err.println("Media reference counts unreadable, unused media is kept: " + e.getMessage());
+                refCounts.clear();
+                refsLost = true;
+                return;
+            }
+        }
+        File logOnDisk = new File(LOG_FILE);
+        if (logOnDisk.isFile()) {
+            replayLog(logOnDisk);
+            saveRefs(); // Starts an empty log, so appends never follow a torn entry
+        }
+    }
+
+    private void replayLog(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readLong() != generation) {
+                return; // Already folded into refs.dat
+            }
+            while (true) {
+                String hash = in.readUTF();
+                int delta = in.readInt();
+                if (!hash.matches("[0-9a-f]{64}") || (delta != 1 && delta != -1)) {
+                    throw new IOException("Corrupt entry");
+                }
+                int count = refCounts.getOrDefault(hash, 0) + delta;
+                if (count > 0) {
+                    refCounts.put(hash, count);
+                } else {
+                    refCounts.remove(hash);
+                }
+            }
+        } catch (EOFException e) {
+            // End of the log, or an entry torn by a crash (its change never completed)
+        } catch (IOException e) {
+            System.err.println("Media reference log unreadable after some entries: " + e.getMessage());
+        }
+    }
+
+    // Helper: Append one change, or rewrite refs.dat (which includes it) when there is
+    // no usable log or the log has outgrown it
+    private void logChange(String hash, int delta, boolean sync) {
+        if (refsLost) {
+            return; // Would replace the unreadable counts with partial ones
+        }
+        if (log == null || logEntries >= Math.max(MIN_LOG_ENTRIES, refCounts.size())) {
+            saveRefs();
+            return;
+        }
+        try {
+            log.writeUTF(hash);
+            log.writeInt(delta);
+            log.flush();
+            if (sync) {
+                logFile.getFD().sync();
+            }
+            logEntries++;
+        } catch (IOException e) {
+            System.err.println("Could not log media reference count: " + e.getMessage());
+            closeLog(); // It may end in a torn entry now
+            saveRefs();
+        }
+    }
+
+    private void openLog() throws IOException {
+        new File(DIR).mkdirs();
+        logFile = new FileOutputStream(LOG_FILE); // Emptied, everything before is in refs.dat
+        log = new DataOutputStream(new BufferedOutputStream(logFile));
+        log.writeLong(generation);
+        log.flush();
+        logEntries = 0;
+    }
+
+    private void closeLog() {
+        if (logFile != null) {
+            try {
+                logFile.close();
+            } catch (IOException e) {
+                System.err.println("Could not close media reference log: " + e.getMessage());
+            }
+        }
+        logFile = null;
+        log = null;
+    }
+
+    // Helper: Write every count under a new generation, which also makes the log stale
+    private void saveRefs() {
+        if (refsLost) {
+            return; // Would replace the unreadable counts with partial ones
+        }
+        new File(DIR).mkdirs();
+        File tempFile = new File(REFS_FILE + ".tmp");
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+                out.writeInt(REFS_VERSION);
+                out.writeLong(generation + 1);
+                out.writeInt(refCounts.size());
+                for (Map.Entry<String, Integer> entry : refCounts.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            moveIntoPlace(tempFile, new File(REFS_FILE));
+        } catch (IOException e) {
+            // The log, if there is one, still holds what refs.dat lacks
+            System.err.println("Could not save media reference counts: " + e.getMessage());
+            tempFile.delete();
+            return;
+        }
+        generation++;
+        closeLog();
+        try {
+            openLog();
+        } catch (IOException e) {
+            System.err.println("Could not start media reference log: " + e.getMessage());
+            closeLog(); // Changes rewrite refs.dat until a log can be started
+        }
+    }
+}
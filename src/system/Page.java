@@ -0,0 +1,21 @@
+package system;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Page - One slice of a paged listing plus the cursor for the next slice
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final PageCursor nextCursor; // null when this is the last page
+
+    public Page(List<T> items, PageCursor nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() { return items; }
+    public PageCursor getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor != null; }
+}
@@ -0,0 +1,75 @@
+package system;
+
+import models.Post;
+
+/**
+ * PageCursor - Position in a newest-first listing, identified by (timestamp, id)
+ * Pass the cursor returned with one page to get the page that follows it.
+ * Unlike an offset, it stays correct when new items are added in front.
+ */
+public final class PageCursor implements Comparable<PageCursor> {
+    private final long timestamp;
+    private final String id;
+
+    public PageCursor(long timestamp, String id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static PageCursor of(Post post) {
+        return new PageCursor(post.getTimestamp(), post.getId());
+    }
+
+    /**
+     * Read a cursor back from its toString form, or null if the text isn't one
+     */
+    public static PageCursor parse(String text) {
+        int colon = text != null ? text.indexOf(':') : -1;
+        if (colon <= 0 || colon == text.length() - 1) {
+            return null;
+        }
+        try {
+            return new PageCursor(Long.parseLong(text.substring(0, colon)), text.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public String getId() { return id; }
+
+    /**
+     * Newest first, ties broken by id so every item has exactly one position
+     */
+    public static int compare(long timestamp1, String id1, long timestamp2, String id2) {
+        int byTime = Long.compare(timestamp2, timestamp1);
+        return byTime != 0 ? byTime : id1.compareTo(id2);
+    }
+
+    // True if the post comes after this cursor, i.e. belongs on a later page
+    public boolean isBefore(Post post) {
+        return compare(timestamp, id, post.getTimestamp(), post.getId()) < 0;
+    }
+
+    @Override
+    public int compareTo(PageCursor other) {
+        return compare(timestamp, id, other.timestamp, other.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PageCursor)) return false;
+        PageCursor other = (PageCursor) o;
+        return timestamp == other.timestamp && id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(timestamp) * 31 + id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + ":" + id;
+    }
+}
@@ -0,0 +1,121 @@
+package system;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+
+/**
+ * PersistenceBenchmark - Compares save/load throughput of the encryption layers
+ * Measures plain file I/O, the old path (a fresh AES/ECB cipher per file behind an
+ * unbuffered CipherOutputStream/CipherInputStream fed in small writes, as the
+ * serialization-era code did) and PersistenceCrypto's chunked AES-GCM.
+ * No fsync is done, so the numbers show the cost of the encryption layer itself.
+ *
+ * Usage: java system.PersistenceBenchmark [megabytes] [rounds]
+ */
+public class PersistenceBenchmark {
+    // The old code wrote through ObjectOutputStream, which flushes in blocks of this size
+    private static final int OLD_WRITE_SIZE = 1024;
+    // Untimed rounds first, so every path runs JIT-compiled (GCM is very slow interpreted)
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        byte[] data = sampleData(megabytes * 1024 * 1024);
+        File file = File.createTempFile("persistence-benchmark", ".dat");
+        file.deleteOnExit();
+
+        System.out.println("Data size: " + megabytes + " MB, best of " + rounds + " rounds after " + WARMUP_ROUNDS + " warm-up rounds");
+        System.out.printf("%-22s %12s %12s%n", "", "save MB/s", "load MB/s");
+
+        // Plain file I/O, the upper bound
+        report("raw file", data.length, rounds,
+               () -> Files.write(file.toPath(), data),
+               () -> Files.readAllBytes(file.toPath()));
+
+        // Old path
+        report("AES/ECB stream (old)", data.length, rounds,
+               () -> {
+                   Cipher cipher = Cipher.getInstance("AES");
+                   cipher.init(Cipher.ENCRYPT_MODE, PersistenceCrypto.key());
+                   try (OutputStream out = new CipherOutputStream(new FileOutputStream(file), cipher)) {
+                       for (int offset = 0; offset < data.length; offset += OLD_WRITE_SIZE) {
+                           out.write(data, offset, Math.min(OLD_WRITE_SIZE, data.length - offset));
+                       }
+                   }
+               },
+               () -> {
+                   Cipher cipher = Cipher.getInstance("AES");
+                   cipher.init(Cipher.DECRYPT_MODE, PersistenceCrypto.key());
+                   byte[] buffer = new byte[OLD_WRITE_SIZE];
+                   try (InputStream in = new CipherInputStream(new FileInputStream(file), cipher)) {
+                       while (in.read(buffer) != -1) {
+                           // Consume
+                       }
+                   }
+               });
+
+        // New path, as used by DataPersistence.saveToFile / loadFromFile
+        report("AES/GCM chunked (new)", data.length, rounds,
+               () -> {
+                   try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)) {
+                       PersistenceCrypto.seal(data, out);
+                   }
+               },
+               () -> {
+                   byte[] sealed = Files.readAllBytes(file.toPath());
+                   byte[] buffer = new byte[64 * 1024];
+                   try (InputStream in = PersistenceCrypto.open(sealed, 0, sealed.length)) {
+                       while (in.read(buffer) != -1) {
+                           // Consume
+                       }
+                   }
+               });
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    // Helper: Run save and load rounds times and print the best throughput of each
+    private static void report(String name, long bytes, int rounds, Task save, Task load) throws Exception {
+        long bestSave = Long.MAX_VALUE;
+        long bestLoad = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            save.run();
+            load.run();
+        }
+        for (int i = 0; i < rounds; i++) {
+            bestSave = Math.min(bestSave, time(save));
+            bestLoad = Math.min(bestLoad, time(load));
+        }
+        System.out.printf("%-22s %12.1f %12.1f%n", name, megabytesPerSecond(bytes, bestSave),
+                          megabytesPerSecond(bytes, bestLoad));
+    }
+
+    private static long time(Task task) throws Exception {
+        long start = System.nanoTime();
+        task.run();
+        return System.nanoTime() - start;
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1_000_000_000.0);
+    }
+
+    // Helper: Text-like data, roughly what encoded posts and comments look like
+    private static byte[] sampleData(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(42);
+        String alphabet = "abcdefghijklmnopqrstuvwxyz      .,!ABCDEFGHIJ0123456789";
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,249 @@
+package system;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * PersistenceCrypto - Authenticated encryption for the data files and journal
+ * Data is sealed with AES-GCM in large chunks, each chunk with its own nonce and
+ * tag, so it can be written and read as a stream without holding a second copy.
+ * Cipher objects are cached per thread instead of being looked up for every file.
+ *
+ * Sealed layout:
+ *   [int SEALED_MAGIC][int chunk size][8 byte nonce prefix]
+ *   then one GCM chunk per chunk size of plaintext: [ciphertext][16 byte tag]
+ * The chunk nonce is the prefix plus the chunk number, and the last chunk is marked
+ * in its associated data, so reordered, dropped or truncated chunks fail to open.
+ */
+final class PersistenceCrypto {
+    static final int SEALED_MAGIC = 0x53434731; // "SCG1"
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int TAG_BYTES = 16;
+    private static final int NONCE_PREFIX_BYTES = 8;
+    private static final byte[] MIDDLE_CHUNK = {0};
+    private static final byte[] LAST_CHUNK = {1};
+
+    // Encryption key
+    private static final String ENCRYPTION_KEY_STRING = "SocialNetwork2024!"; // 16 characters for AES-128
+    private static final SecretKey KEY = createKey();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Cipher.getInstance is slow, so every thread keeps its own instances
+    private static final ThreadLocal<Cipher> GCM = ThreadLocal.withInitial(() -> newCipher("AES/GCM/NoPadding"));
+    private static final ThreadLocal<Cipher> LEGACY = ThreadLocal.withInitial(() -> newCipher("AES"));
+    private static final ThreadLocal<byte[]> CHUNK_BUFFER = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE + TAG_BYTES]);
+
+    private PersistenceCrypto() {}
+
+    /**
+     * Size of the sealed form of plainLength bytes
+     */
+    static long sealedLength(long plainLength) {
+        long chunks = Math.max(1, (plainLength + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        return HEADER_SIZE + plainLength + chunks * TAG_BYTES;
+    }
+
+    /**
+     * Encrypt data chunk by chunk straight into out
+     */
+    static void seal(byte[] data, OutputStream out) throws IOException {
+        byte[] prefix = new byte[NONCE_PREFIX_BYTES];
+        RANDOM.nextBytes(prefix);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(SEALED_MAGIC);
+        header.writeInt(CHUNK_SIZE);
+        header.write(prefix);
+
+        Cipher cipher = GCM.get();
+        byte[] buffer = CHUNK_BUFFER.get();
+        int offset = 0;
+        int chunk = 0;
+        do {
+            int length = Math.min(CHUNK_SIZE, data.length - offset);
+            boolean last = offset + length == data.length;
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, KEY, nonce(prefix, chunk));
+                cipher.updateAAD(last ? LAST_CHUNK : MIDDLE_CHUNK);
+                int sealed = cipher.doFinal(data, offset, length, buffer, 0);
+                out.write(buffer, 0, sealed);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Encryption failed", e);
+            }
+            offset += length;
+            chunk++;
+        } while (offset < data.length);
+    }
+
+    /**
+     * Encrypt data into a new array (for small payloads such as journal records)
+     */
+    static byte[] seal(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) sealedLength(data.length));
+        seal(data, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * True if the bytes start like sealed data
+     */
+    static boolean isSealed(byte[] data, int offset, int length) {
+        return length >= HEADER_SIZE && ByteBuffer.wrap(data, offset, 4).getInt() == SEALED_MAGIC;
+    }
+
+    /**
+     * Stream that decrypts sealed data one chunk at a time.
+     * Each chunk is authenticated before any of its bytes are returned.
+     */
+    static InputStream open(byte[] sealed, int offset, int length) throws IOException {
+        return new OpenStream(sealed, offset, length);
+    }
+
+    static byte[] open(byte[] sealed) throws IOException {
+        try (InputStream in = open(sealed, 0, sealed.length)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Decrypt data written before authenticated encryption (AES/ECB)
+     */
+    static byte[] openLegacy(byte[] ciphertext) throws GeneralSecurityException {
+        Cipher cipher = LEGACY.get();
+        cipher.init(Cipher.DECRYPT_MODE, KEY);
+        return cipher.doFinal(ciphertext);
+    }
+
+    /**
+     * Cipher for streaming legacy (AES/ECB) files, ready to decrypt
+     */
+    static Cipher legacyDecryptCipher() throws GeneralSecurityException {
+        Cipher cipher = LEGACY.get();
+        cipher.init(Cipher.DECRYPT_MODE, KEY);
+        return cipher;
+    }
+
+    // The data file key (PersistenceBenchmark uses it to reproduce the old path)
+    static SecretKey key() {
+        return KEY;
+    }
+
+    // Helper: 12 byte GCM nonce from the per-file prefix and the chunk number
+    private static GCMParameterSpec nonce(byte[] prefix, int chunk) {
+        byte[] iv = new byte[NONCE_PREFIX_BYTES + 4];
+        System.arraycopy(prefix, 0, iv, 0, NONCE_PREFIX_BYTES);
+        ByteBuffer.wrap(iv, NONCE_PREFIX_BYTES, 4).putInt(chunk);
+        return new GCMParameterSpec(TAG_BYTES * 8, iv);
+    }
+
+    private static SecretKey createKey() {
+        byte[] keyBytes = ENCRYPTION_KEY_STRING.getBytes();
+        // Ensure key is exactly 16 bytes for AES-128
+        byte[] key = new byte[16];
+        System.arraycopy(keyBytes, 0, key, 0, Math.min(keyBytes.length, 16));
+        return new SecretKeySpec(key, "AES");
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher not available: " + transformation, e);
+        }
+    }
+
+    /**
+     * OpenStream - Decrypts the next chunk whenever the current one is used up
+     */
+    private static class OpenStream extends InputStream {
+        private final byte[] sealed;
+        private final int end;
+        private final byte[] prefix = new byte[NONCE_PREFIX_BYTES];
+        private final int chunkSize;
+        private final byte[] plain;
+        private int position; // Next sealed chunk in the source array
+        private int chunk;
+        private int plainPos;
+        private int plainLimit;
+        private boolean finished;
+
+        OpenStream(byte[] sealed, int offset, int length) throws IOException {
+            if (!isSealed(sealed, offset, length)) {
+                throw new IOException("Not sealed data");
+            }
+            ByteBuffer header = ByteBuffer.wrap(sealed, offset + 4, HEADER_SIZE - 4);
+            chunkSize = header.getInt();
+            if (chunkSize <= 0 || chunkSize > 64 * 1024 * 1024) {
+                throw new IOException("Corrupt chunk size: " + chunkSize);
+            }
+            header.get(prefix);
+            this.sealed = sealed;
+            this.end = offset + length;
+            this.position = offset + HEADER_SIZE;
+            this.plain = new byte[Math.min(chunkSize, Math.max(0, length - HEADER_SIZE))];
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return plain[plainPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, plainLimit - plainPos);
+            System.arraycopy(plain, plainPos, b, off, count);
+            plainPos += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return plainLimit - plainPos;
+        }
+
+        // Decrypt the next chunk if the current one is used up, false at the end
+        private boolean fill() throws IOException {
+            while (plainPos >= plainLimit) {
+                if (finished) {
+                    return false;
+                }
+                int remaining = end - position;
+                int length = Math.min(chunkSize + TAG_BYTES, remaining);
+                if (length < TAG_BYTES) {
+                    throw new IOException("Sealed data is truncated");
+                }
+                boolean last = length == remaining;
+                try {
+                    Cipher cipher = GCM.get();
+                    cipher.init(Cipher.DECRYPT_MODE, KEY, nonce(prefix, chunk));
+                    cipher.updateAAD(last ? LAST_CHUNK : MIDDLE_CHUNK);
+                    plainLimit = cipher.doFinal(sealed, position, length, plain, 0);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Sealed data failed authentication", e);
+                }
+                plainPos = 0;
+                position += length;
+                chunk++;
+                finished = last;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package system;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * PersistenceWriter - Background thread that writes journal records and snapshots
+ * Callers (usually the Swing EDT) only encode data and hand it over, so disk
+ * writes, encryption and fsync no longer block the UI.
+ *
+ * Records are written in groups: the thread waits up to the flush interval for
+ * more records (or until a batch is full) and then appends them all with a single
+ * fsync. A newer snapshot is merged over an older pending one, and records queued
+ * before a snapshot are only written if the snapshot fails (it contains their changes).
+ * A failed write fails the futures of its batch, and of every later one, until a
+ * snapshot is written again: until then, changes made so far are not all on disk.
+ */
+public class PersistenceWriter {
+    // Defaults, overridable with -Dsocialconnect.flushIntervalMs / -Dsocialconnect.flushBatchSize
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = Long.getLong("socialconnect.flushIntervalMs", 50);
+    public static final int DEFAULT_FLUSH_BATCH_SIZE = Integer.getInteger("socialconnect.flushBatchSize", 64);
+
+    private final long flushIntervalMs;
+    private final int maxBatchSize;
+    private final Object lock = new Object();
+    private final Thread thread;
+
+    // Guarded by lock
+    private ArrayList<byte[]> pendingRecords = new ArrayList<>();
+    private DataPersistence.Snapshot pendingSnapshot;
+    private ArrayList<byte[]> coveredRecords = new ArrayList<>(); // Queued before pendingSnapshot
+    private ArrayList<CompletableFuture<Void>> waiters = new ArrayList<>();
+    private boolean writing;
+    private boolean flushRequested;
+    private boolean stopped;
+    private Throwable failure; // Last failed write, cleared by the next snapshot that succeeds
+
+    // Set when a journal append failed, so the owner knows to take a full snapshot
+    private volatile boolean journalFailed;
+
+    public PersistenceWriter() {
+        this(DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_BATCH_SIZE);
+    }
+
+    public PersistenceWriter(long flushIntervalMs, int maxBatchSize) {
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        thread = new Thread(this::run, "persistence-writer");
+        thread.setDaemon(true); // Shutdown goes through forceSave, which waits for the flush
+        thread.start();
+    }
+
+    /**
+     * Queue an encoded journal record. The future completes once it is on disk.
+     */
+    public CompletableFuture<Void> submitRecord(byte[] record) {
+        synchronized (lock) {
+            if (stopped) {
+                boolean written = DataPersistence.appendJournal(List.of(record));
+                return outcome(recordOutcome(false, written ? null : new IOException("Could not append to the journal")));
+            }
+            pendingRecords.add(record);
+            lock.notifyAll();
+            return waitForNextFlush();
+        }
+    }
+
+    /**
+     * Queue a full snapshot. The future completes once it is on disk.
+     */
+    public CompletableFuture<Void> submitSnapshot(DataPersistence.Snapshot snapshot) {
+        synchronized (lock) {
+            if (stopped) {
+                boolean written = DataPersistence.writeSnapshot(snapshot);
+                return outcome(recordOutcome(written, written ? null : new IOException("Could not write the snapshot")));
+            }
+            if (pendingSnapshot != null) {
+                snapshot.absorb(pendingSnapshot); // Snapshots only hold changed segments, keep the older ones
+            }
+            pendingSnapshot = snapshot;
+            coveredRecords.addAll(pendingRecords); // Contained in the snapshot, kept in case it fails
+            pendingRecords.clear();
+            flushRequested = true;
+            lock.notifyAll();
+            return waitForNextFlush();
+        }
+    }
+
+    /**
+     * Write everything queued so far without waiting for the flush interval.
+     * The future completes once it is on disk, or fails if some of it could not be written.
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (lock) {
+            if (pendingRecords.isEmpty() && pendingSnapshot == null && !writing) {
+                return outcome(failure);
+            }
+            flushRequested = true;
+            lock.notifyAll();
+            return waitForNextFlush();
+        }
+    }
+
+    /**
+     * Flush and stop the thread. Later submissions are written synchronously.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean hasJournalFailed() {
+        return journalFailed;
+    }
+
+    public void clearJournalFailed() {
+        journalFailed = false;
+    }
+
+    // Must hold lock. Completes after the next batch that includes everything queued so far.
+    private CompletableFuture<Void> waitForNextFlush() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(future);
+        return future;
+    }
+
+    // Must hold lock. Note how a write went and return the failure its waiters see, if any.
+    private Throwable recordOutcome(boolean wroteSnapshot, Throwable error) {
+        if (error != null) {
+            failure = error;
+            journalFailed = true; // The owner takes a full snapshot, which clears the failure
+        } else if (wroteSnapshot) {
+            failure = null; // Everything up to the snapshot is on disk now
+        }
+        return failure;
+    }
+
+    private static CompletableFuture<Void> outcome(Throwable failure) {
+        return failure == null ? CompletableFuture.completedFuture(null) : CompletableFuture.failedFuture(failure);
+    }
+
+    private void run() {
+        while (true) {
+            List<byte[]> records;
+            List<byte[]> covered;
+            DataPersistence.Snapshot snapshot;
+            List<CompletableFuture<Void>> batchWaiters;
+
+            synchronized (lock) {
+                try {
+                    while (pendingRecords.isEmpty() && pendingSnapshot == null && waiters.isEmpty() && !stopped) {
+                        lock.wait();
+                    }
+                    // Group commit: give more records a chance to join this batch
+                    long deadline = System.currentTimeMillis() + flushIntervalMs;
+                    while (!flushRequested && !stopped && pendingRecords.size() < maxBatchSize) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        lock.wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    stopped = true;
+                }
+
+                records = pendingRecords;
+                covered = coveredRecords;
+                snapshot = pendingSnapshot;
+                batchWaiters = waiters;
+                pendingRecords = new ArrayList<>();
+                coveredRecords = new ArrayList<>();
+                pendingSnapshot = null;
+                waiters = new ArrayList<>();
+                flushRequested = false;
+                writing = true;
+            }
+
+            boolean wroteSnapshot = false;
+            Throwable error = null;
+            try {
+                // Snapshot first: it clears the journal, and the records queued after it belong on top
+                if (snapshot != null) {
+                    wroteSnapshot = DataPersistence.writeSnapshot(snapshot);
+                    if (!wroteSnapshot) {
+                        error = new IOException("Could not write the snapshot");
+                        // The journal was kept, so the records the snapshot would have covered go on it first
+                        covered.addAll(records);
+                        records = covered;
+                    }
+                }
+                if (!records.isEmpty() && !DataPersistence.appendJournal(records)) {
+                    error = new IOException("Could not append to the journal");
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Background save failed: " + e.getMessage());
+                e.printStackTrace();
+                error = e;
+            } finally {
+                Throwable batchFailure;
+                synchronized (lock) {
+                    batchFailure = recordOutcome(wroteSnapshot, error);
+                }
+                for (CompletableFuture<Void> waiter : batchWaiters) {
+                    if (batchFailure == null) {
+                        waiter.complete(null);
+                    } else {
+                        waiter.completeExceptionally(batchFailure);
+                    }
+                }
+            }
+
+            synchronized (lock) {
+                writing = false;
+                if (stopped && pendingRecords.isEmpty() && pendingSnapshot == null && waiters.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+}
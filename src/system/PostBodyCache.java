@@ -0,0 +1,111 @@
+package system;
+
+import models.Post;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+/**
+ * PostBodyCache - Bounded LRU of post bodies for the lazy posts mode
+ * Every post header stays in memory, but only up to capacity posts keep their
+ * likes, comments and content. A miss reads the post's segment file and also fills
+ * in unloaded neighbours from it while there is room, since neighbouring posts are
+ * usually shown together. Bodies are only dropped once their segment is on disk,
+ * and only while nobody holds the post's lock (a change to it may not be journaled yet).
+ */
+class PostBodyCache implements Post.BodySource {
+    // Override with -Dsocialconnect.postCacheSize
+    static final int DEFAULT_CAPACITY = Integer.getInteger("socialconnect.postCacheSize", 2000);
+
+    private final int capacity;
+    private final Function<String, Post> headers; // Resident post by id
+    private final Function<String, Lock> locks; // Lock held while a post's body changes
+    private final LinkedHashMap<String, Post> loaded = new LinkedHashMap<>(16, 0.75f, true); // Access order
+
+    // Metrics
+    private long hits;
+    private long misses;
+    private long segmentReads;
+    private long evictions;
+
+    PostBodyCache(int capacity, Function<String, Post> headers, Function<String, Lock> locks) {
+        this.capacity = Math.max(1, capacity);
+        this.headers = headers;
+        this.locks = locks;
+    }
+
+    @Override
+    public synchronized void ensureLoaded(Post post) {
+        if (post.isBodyLoaded()) {
+            hits++;
+            if (loaded.get(post.getId()) == null) {
+                loaded.put(post.getId(), post); // Created or replayed in memory, now tracked
+                evict(post);
+            }
+            return;
+        }
+
+        misses++;
+        ArrayList<Post> segment;
+        try {
+            segment = DataPersistence.loadPostSegment(post.getId());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load post " + post.getId(), e);
+        }
+        segmentReads++;
+        for (Post full : segment) {
+            boolean requested = full.getId().equals(post.getId());
+            if (!requested && loaded.size() >= capacity) {
+                continue; // Neighbours only fill free space, they must not push out used bodies
+            }
+            Post header = requested ? post : headers.apply(full.getId());
+            if (header != null && !header.isBodyLoaded()) {
+                header.attachBody(full);
+                loaded.put(header.getId(), header);
+            }
+        }
+        if (!post.isBodyLoaded()) {
+            throw new IllegalStateException("Post " + post.getId() + " is missing from its segment file");
+        }
+        loaded.get(post.getId()); // Most recently used
+        evict(post);
+    }
+
+    synchronized void remove(String postId) {
+        loaded.remove(postId);
+    }
+
+    synchronized String getStats() {
+        long requests = hits + misses;
+        double hitRate = requests == 0 ? 0 : 100.0 * hits / requests;
+        return String.format("hits=%d misses=%d hitRate=%.1f%% segmentReads=%d evictions=%d loaded=%d/%d",
+                             hits, misses, hitRate, segmentReads, evictions, loaded.size(), capacity);
+    }
+
+    // Helper: Drop least recently used bodies until within capacity, keeping unsaved ones
+    // and those being changed (never waits for a post's lock, its holder may be loading)
+    private void evict(Post keep) {
+        Iterator<Post> iterator = loaded.values().iterator();
+        while (loaded.size() > capacity && iterator.hasNext()) {
+            Post candidate = iterator.next();
+            if (candidate == keep) {
+                continue;
+            }
+            Lock lock = locks.apply(candidate.getId());
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (DataPersistence.isPostPersisted(candidate.getId())) {
+                    candidate.unloadBody();
+                    iterator.remove();
+                    evictions++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
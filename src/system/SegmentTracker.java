@@ -0,0 +1,144 @@
+package system;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * SegmentTracker - Maps users and posts to segment files and remembers which changed
+ * Entities are grouped by the number in their id ("post_1234" -> 1234 / SEGMENT_SIZE),
+ * so new entities land in the newest segment and old segments are rarely rewritten.
+ * Ids without a number are spread over HASH_SEGMENTS extra segments by hash.
+ * A segment is dirty from the first change to it until a snapshot has taken it, and
+ * in flight from then until that snapshot is on disk.
+ */
+class SegmentTracker {
+    static final int SEGMENT_SIZE = 256;
+
+    private static final int HASH_SEGMENTS = 64;
+    private static final int HASH_SEGMENT_BASE = 1_000_000_000;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".dat";
+
+    private final String directory;
+    private final String legacyFile; // Single file used before segments, replaced by them
+    private final TreeSet<Integer> dirty = new TreeSet<>(); // Guarded by this
+    private boolean allDirty = true; // Nothing on disk yet, until a load says otherwise
+    private final HashMap<Integer, Integer> inFlight = new HashMap<>(); // Segment -> snapshots writing it
+    private int allInFlight; // Full rewrites being written
+
+    SegmentTracker(String directory, String legacyFile) {
+        this.directory = directory;
+        this.legacyFile = legacyFile;
+    }
+
+    String getDirectory() {
+        return directory;
+    }
+
+    String getLegacyFile() {
+        return legacyFile;
+    }
+
+    static int segmentOf(String id) {
+        int separator = id.lastIndexOf('_');
+        try {
+            long number = Long.parseLong(id.substring(separator + 1));
+            if (number >= 0 && number / SEGMENT_SIZE < HASH_SEGMENT_BASE) {
+                return (int) (number / SEGMENT_SIZE);
+            }
+        } catch (NumberFormatException e) {
+            // Not a numbered id
+        }
+        return HASH_SEGMENT_BASE + Math.floorMod(id.hashCode(), HASH_SEGMENTS);
+    }
+
+    String fileFor(int segment) {
+        return directory + File.separator + PREFIX + String.format("%010d", segment) + SUFFIX;
+    }
+
+    /**
+     * Segment files currently on disk, in segment order
+     */
+    List<String> existingFiles() {
+        File[] files = new File(directory).listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        List<String> names = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                names.add(file.getPath());
+            }
+        }
+        Collections.sort(names); // Zero-padded numbers sort in segment order
+        return names;
+    }
+
+    synchronized void markDirty(String id) {
+        if (!allDirty) {
+            dirty.add(segmentOf(id));
+        }
+    }
+
+    synchronized void markAllDirty() {
+        allDirty = true;
+        dirty.clear();
+    }
+
+    // Called after a load: the files on disk now match memory
+    synchronized void markAllClean() {
+        allDirty = false;
+        dirty.clear();
+    }
+
+    /**
+     * True if the segment holding id is on disk exactly as in memory
+     */
+    synchronized boolean isPersisted(String id) {
+        int segment = segmentOf(id);
+        return !allDirty && allInFlight == 0 && !dirty.contains(segment) && !inFlight.containsKey(segment);
+    }
+
+    /**
+     * Take the dirty segments for a snapshot and reset tracking.
+     * They count as in flight until finish is called with the returned take.
+     */
+    synchronized Take takeDirty() {
+        if (allDirty) {
+            allDirty = false;
+            allInFlight++;
+            return new Take(this, null);
+        }
+        Set<Integer> taken = new TreeSet<>(dirty);
+        dirty.clear();
+        for (int segment : taken) {
+            inFlight.merge(segment, 1, Integer::sum);
+        }
+        return new Take(this, taken);
+    }
+
+    // Called once the snapshot holding a take has been written (or has failed)
+    synchronized void finish(Take take) {
+        if (take.segments == null) {
+            allInFlight--;
+            return;
+        }
+        for (int segment : take.segments) {
+            inFlight.computeIfPresent(segment, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Take - Segments handed to one snapshot (null segments: all of them)
+     */
+    static final class Take {
+        final SegmentTracker tracker;
+        final Set<Integer> segments;
+
+        private Take(SegmentTracker tracker, Set<Integer> segments) {
+            this.tracker = tracker;
+            this.segments = segments;
+        }
+
+        boolean isFull() {
+            return segments == null;
+        }
+    }
+}
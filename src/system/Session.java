@@ -0,0 +1,58 @@
+package system;
+
+import models.User;
+
+/**
+ * Session - One signed-in user working with the system
+ * Opened by SocialNetworkSystem.openSession and passed to every operation done on
+ * the user's behalf, so any number of users can be signed in at once. The token
+ * identifies the session to clients that can't hold the object (e.g. over HTTP).
+ * Sessions left unused for a while, and those of a banned user, are closed.
+ */
+public final class Session {
+    private final String token;
+    private final User user;
+    private final long createdAt;
+    private volatile long lastUsedAt;
+    private volatile boolean open = true;
+
+    Session(String token, User user) {
+        this.token = token;
+        this.user = user;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    void touch() {
+        lastUsedAt = System.currentTimeMillis();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    void close() {
+        open = false;
+    }
+
+    @Override
+    public String toString() {
+        return "Session[" + user.getUsername() + (open ? "" : ", closed") + "]";
+    }
+}
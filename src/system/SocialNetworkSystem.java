@@ -1,34 +1,112 @@
 package system;
 
 import models.*;
+import java.io.IOException;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * SocialNetworkSystem 
+ * Safe to use from any number of threads. Lookups by id, username or email and the
+ * post listings read concurrent maps without locking. Other reads share a read lock,
+ * and changes to users, posts and requests take the write lock, except likes and
+ * comments: those share the read lock and only exclude changes to the same post,
+ * through a striped lock per post.
  */
 public class SocialNetworkSystem {
-    private static SocialNetworkSystem instance;
+    private static volatile SocialNetworkSystem instance;
+    private static CompletableFuture<SocialNetworkSystem> loading; // Guarded by SocialNetworkSystem.class
+    
+    // Read lock for reads of the lists, models and indexes below, write lock to change them
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Likes and comments of one post change under its stripe (while holding the read lock)
+    private static final int POST_LOCK_STRIPES = 64;
+    private final ReentrantLock[] postLocks;
     
     private ArrayList<User> users;
     private ArrayList<Post> posts;
-    private User currentUser;
-    private int userIdCounter;
-    private int postIdCounter;
-    private int commentIdCounter;
-    private int reportIdCounter;
+    private volatile Session currentSession; // The desktop GUI's session (login/logout)
+    private ConcurrentHashMap<String, Session> sessions; // Open sessions by token
+    private ConcurrentHashMap<String, ArrayDeque<Session>> sessionsByUser; // User id -> open sessions, oldest first
+    private final AtomicLong lastSessionSweep = new AtomicLong();
+    private final AtomicInteger userIdCounter = new AtomicInteger(1);
+    private final AtomicInteger postIdCounter = new AtomicInteger(1);
+    private final AtomicInteger commentIdCounter = new AtomicInteger(1);
+    private final AtomicInteger reportIdCounter = new AtomicInteger(1);
     private ArrayList<VerificationRequest> verificationRequests; 
     private ArrayList<CommentReport> commentReports; 
+    private final AtomicInteger journalRecordCount = new AtomicInteger(); // Mutations appended since the last full snapshot
+    private PersistenceWriter writer; // Writes journal records and snapshots off the calling thread
+    private final ConcurrentLinkedQueue<String> deferredReleases = new ConcurrentLinkedQueue<>(); // Media dropped by unwritten changes
+    
+    // Primary-key indexes, kept in sync with the users and posts lists
+    private ConcurrentHashMap<String, User> usersById;
+    private ConcurrentHashMap<String, User> usersByUsername; // Key: lower-cased username
+    private ConcurrentHashMap<String, User> usersByEmail;    // Key: trimmed, lower-cased email
+    private ConcurrentHashMap<String, LinkedHashSet<String>> bannedBy; // Banned user id -> admins who banned them
+    private UserSearchIndex userSearch; // Username and full name n-grams
+    private ConcurrentHashMap<String, Post> postsById;
+    private ConcurrentSkipListMap<PageCursor, Post> postsByTime; // Newest first
+    private ConcurrentHashMap<String, ConcurrentSkipListMap<PageCursor, Post>> postsByAuthor; // Newest first
+    
+    // Precomputed home feeds for regular users
+    private TimelineStore timelines;
+    
+    // Full-text index over post text and comments, built on the first post search
+    private volatile TextSearchIndex textSearch;
+    
+    private static final SecureRandom TOKEN_RANDOM = new SecureRandom();
+    
+    // Sessions other than the desktop one close after this long unused (-Dsocialconnect.sessionIdleMinutes)
+    private static final long SESSION_IDLE_MS = Long.getLong("socialconnect.sessionIdleMinutes", 30) * 60_000L;
+    private static final long SESSION_SWEEP_MS = 60_000L;
+    // Opening one more closes the user's oldest session
+    private static final int MAX_SESSIONS_PER_USER = 10;
+    
+    // Take a full snapshot after this many journal records
+    private static final int CHECKPOINT_INTERVAL = 200;
+    
+    // Lazy posts mode (-Dsocialconnect.lazyPosts=true): only post headers stay in memory,
+    // bodies come and go through postBodies (null when the mode is off)
+    private static final boolean LAZY_POSTS = Boolean.getBoolean("socialconnect.lazyPosts");
+    private PostBodyCache postBodies;
 
     private SocialNetworkSystem() {
+        postLocks = new ReentrantLock[POST_LOCK_STRIPES];
+        for (int i = 0; i < POST_LOCK_STRIPES; i++) {
+            postLocks[i] = new ReentrantLock();
+        }
         users = new ArrayList<>();
         posts = new ArrayList<>();
-        currentUser = null;
-        userIdCounter = 1;
-        postIdCounter = 1;
-        commentIdCounter = 1;
-        reportIdCounter = 1;
+        sessions = new ConcurrentHashMap<>();
+        sessionsByUser = new ConcurrentHashMap<>();
         verificationRequests = new ArrayList<>();
         commentReports = new ArrayList<>();
+        usersById = new ConcurrentHashMap<>();
+        usersByUsername = new ConcurrentHashMap<>();
+        usersByEmail = new ConcurrentHashMap<>();
+        bannedBy = new ConcurrentHashMap<>();
+        userSearch = new UserSearchIndex();
+        postsById = new ConcurrentHashMap<>();
+        postsByTime = new ConcurrentSkipListMap<>();
+        postsByAuthor = new ConcurrentHashMap<>();
+        timelines = new TimelineStore();
+        writer = new PersistenceWriter();
+        if (LAZY_POSTS) {
+            // Bodies are only dropped while their post's lock is free, so no like or
+            // comment is lost between changing a body and journaling it
+            postBodies = new PostBodyCache(PostBodyCache.DEFAULT_CAPACITY, id -> postsById.get(id), this::postLock);
+        }
         
         //  load saved data
         if (!loadSavedData()) {
@@ -37,39 +115,127 @@ public class SocialNetworkSystem {
         }
     }
 
+    /**
+     * Start loading saved data in the background (if not started yet).
+     * The GUI calls this first so it can show the login screen while data loads.
+     */
+    public static synchronized CompletableFuture<SocialNetworkSystem> preload() {
+        if (loading == null) {
+            loading = new CompletableFuture<>();
+            Thread loader = new Thread(() -> {
+                try {
+                    loading.complete(new SocialNetworkSystem());
+                } catch (Throwable t) {
+                    loading.completeExceptionally(t);
+                }
+            }, "system-startup");
+            loader.setDaemon(true);
+            loader.start();
+        }
+        return loading;
+    }
+
+    /**
+     * Get the system, waiting for startup loading to finish if it is still running
+     */
     public static SocialNetworkSystem getInstance() {
-        if (instance == null) {
-            instance = new SocialNetworkSystem();
+        SocialNetworkSystem system = instance;
+        if (system == null) {
+            system = preload().join();
+            instance = system;
         }
-        return instance;
+        return system;
     }
 
     // ==================== USER MANAGEMENT ====================
+    // Operations done for a user take that user's Session; their overloads without one
+    // act for the desktop GUI's session, opened by login and closed by logout.
 
-    public User registerUser(String username, String password, String fullName, 
-                            String email, int age, boolean isAdmin) {
-        // Check if username already exists
+    /**
+     * Check sign-up details against the registration rules (shared by the registration
+     * form and the API). Returns the problem to show, or null if they are acceptable.
+     * Uniqueness can still change before registerUser, which checks it again.
+     */
+    public String validateRegistration(String username, String password, String fullName,
+                                       String email, int age) {
+        if (isBlank(fullName) || isBlank(username) || isBlank(email) || password == null || password.isEmpty()) {
+            return "Please fill in all fields";
+        }
+        if (username.contains(" ")) {
+            return "Username cannot contain spaces";
+        }
+        if (username.length() < 3) {
+            return "Username must be at least 3 characters";
+        }
+        if (!isValidEmail(email)) {
+            return "Invalid email address";
+        }
+        if (isEmailTaken(email)) {
+            return "Email already exists. Please use a different email.";
+        }
         if (getUserByUsername(username) != null) {
-            return null;
+            return "Username already exists. Please choose a different username.";
         }
-        
-        // Check if email already exists (case-insensitive)
-        if (email != null && getUserByEmail(email.trim()) != null) {
-            return null;
+        if (age < 13 || age > 120) {
+            return "Age must be between 13 and 120";
+        }
+        if (password.length() < 6) {
+            return "Password must be at least 6 characters";
+        }
+        return null;
+    }
+
+    // Helper: Email must be in the format alphanumeric@gmail.com
+    private static boolean isValidEmail(String email) {
+        if (!email.endsWith("@gmail.com")) {
+            return false;
+        }
+        String localPart = email.substring(0, email.indexOf("@"));
+        if (localPart.isEmpty()) {
+            return false;
+        }
+        for (char c : localPart.toCharArray()) {
+            if (!Character.isLetterOrDigit(c)) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    public User registerUser(String username, String password, String fullName, 
+                            String email, int age, boolean isAdmin) {
+        lock.writeLock().lock();
+        try {
+            // Check if username already exists
+            if (getUserByUsername(username) != null) {
+                return null;
+            }
+        
+            // Check if email already exists (case-insensitive)
+            if (email != null && getUserByEmail(email.trim()) != null) {
+                return null;
+            }
 
-        String id = "user_" + (userIdCounter++);
-        User newUser;
+            String id = "user_" + userIdCounter.getAndIncrement();
+            User newUser;
         
-        if (isAdmin) {
-            newUser = new Admin(id, username, password, fullName, email, age);
-        } else {
-            newUser = new RegularUser(id, username, password, fullName, email, age);
-        }
+            if (isAdmin) {
+                newUser = new Admin(id, username, password, fullName, email, age);
+            } else {
+                newUser = new RegularUser(id, username, password, fullName, email, age);
+            }
         
-        users.add(newUser);
-        saveData(); // Auto-save after registration
-        return newUser;
+            users.add(newUser);
+            indexUser(newUser);
+            journal(DataPersistence.upsert(newUser)); // Auto-save after registration
+            return newUser;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
     /**
@@ -82,7 +248,24 @@ public class SocialNetworkSystem {
         return getUserByEmail(email.trim()) != null;
     }
 
+    /**
+     * Sign a user in as the desktop GUI's session (replacing the previous one)
+     */
     public User login(String username, String password) {
+        Session session = openSession(username, password);
+        if (session == null) {
+            return null;
+        }
+        closeSession(currentSession);
+        currentSession = session;
+        return session.getUser();
+    }
+    
+    /**
+     * Sign a user in as a session of its own, or null if the credentials are
+     * wrong or the user is banned. Any number of sessions can be open at once.
+     */
+    public Session openSession(String username, String password) {
         if (username == null || password == null) {
             return null;
         }
@@ -92,12 +275,87 @@ public class SocialNetworkSystem {
             if (isUserBanned(user.getId())) {
                 return null; // User is banned, cannot login
             }
-            currentUser = user;
-            return user;
+            Session session = new Session(newSessionToken(), user);
+            sessions.put(session.getToken(), session);
+            sessionsByUser.compute(user.getId(), (id, open) -> {
+                if (open == null) {
+                    open = new ArrayDeque<>();
+                }
+                open.addLast(session);
+                while (open.size() > MAX_SESSIONS_PER_USER) {
+                    Session oldest = open.pollFirst();
+                    oldest.close();
+                    sessions.remove(oldest.getToken());
+                }
+                return open;
+            });
+            closeIdleSessions();
+            return session;
         }
         return null;
     }
     
+    /**
+     * The open session with a token, or null (also once it was left unused too long)
+     */
+    public Session getSession(String token) {
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return null;
+        }
+        if (isIdle(session, System.currentTimeMillis())) {
+            closeSession(session);
+            return null;
+        }
+        session.touch();
+        return session;
+    }
+    
+    public void closeSession(Session session) {
+        if (session != null) {
+            session.close();
+            sessions.remove(session.getToken());
+            sessionsByUser.computeIfPresent(session.getUser().getId(), (id, open) -> {
+                open.remove(session);
+                return open.isEmpty() ? null : open;
+            });
+        }
+    }
+    
+    // Helper: Close every session of a user (e.g. once banned)
+    private void closeSessionsOf(String userId) {
+        ArrayDeque<Session> open = sessionsByUser.remove(userId);
+        if (open != null) {
+            for (Session session : open) {
+                session.close();
+                sessions.remove(session.getToken());
+            }
+        }
+    }
+    
+    // Helper: Close sessions left unused too long, at most once per sweep interval
+    private void closeIdleSessions() {
+        long now = System.currentTimeMillis();
+        long last = lastSessionSweep.get();
+        if (now - last < SESSION_SWEEP_MS || !lastSessionSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Session session : sessions.values()) {
+            if (isIdle(session, now)) {
+                closeSession(session);
+            }
+        }
+    }
+    
+    // Helper: The desktop session stays open for as long as the window does
+    private boolean isIdle(Session session, long now) {
+        return session != currentSession && now - session.getLastUsedAt() > SESSION_IDLE_MS;
+    }
+    
+    public int getOpenSessionCount() {
+        return sessions.size();
+    }
+    
     /**
      * Check if login failed due to ban (call this after login returns null)
      */
@@ -114,569 +372,989 @@ public class SocialNetworkSystem {
     }
     
     public boolean isUserBanned(String userId) {
-        if (userId == null || users == null) {
-            return false;
-        }
-        // Check if any admin has banned this user
-        for (User admin : users) {
-            if (admin instanceof Admin) {
-                Admin adminUser = (Admin) admin;
-                if (adminUser != null && adminUser.isUserBanned(userId)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return userId != null && bannedBy.containsKey(userId); // Banned by at least one admin
     }
 
     public void logout() {
-        currentUser = null;
+        closeSession(currentSession);
+        currentSession = null;
     }
 
     public User getCurrentUser() {
-        return currentUser;
+        return userOf(currentSession);
+    }
+    
+    public Session getCurrentSession() {
+        return currentSession;
+    }
+    
+    // Helper: The user a session acts for, or null once it is closed or its user is banned
+    private User userOf(Session session) {
+        if (session == null || !session.isOpen() || isUserBanned(session.getUser().getId())) {
+            return null;
+        }
+        return session.getUser();
+    }
+    
+    // Helper: Unguessable session token (128 random bits as hex)
+    private static String newSessionToken() {
+        byte[] bytes = new byte[16];
+        TOKEN_RANDOM.nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b));
+        }
+        return token.toString();
     }
 
     public User getUserById(String id) {
-        for (User user : users) {
-            if (user.getId().equals(id)) {
-                return user;
-            }
+        if (id == null) {
+            return null;
         }
-        return null;
+        return usersById.get(id);
     }
 
     public User getUserByUsername(String username) {
-        if (username == null || users == null) {
+        if (username == null) {
             return null;
         }
-        for (User user : users) {
-            if (user != null && user.getUsername() != null && user.getUsername().equalsIgnoreCase(username)) {
-                return user;
-            }
-        }
-        return null;
+        return usersByUsername.get(usernameKey(username));
     }
     
     public User getUserByEmail(String email) {
-        if (email == null || users == null) {
+        if (email == null) {
             return null;
         }
-        String trimmedEmail = email.trim();
-        for (User user : users) {
-            if (user != null && user.getEmail() != null) {
-                String userEmail = user.getEmail().trim();
-                if (userEmail.equalsIgnoreCase(trimmedEmail)) {
-                    return user;
-                }
-            }
-        }
-        return null;
+        return usersByEmail.get(emailKey(email));
     }
     
     public int getUserCount() {
-        return users != null ? users.size() : 0;
+        lock.readLock().lock();
+        try {
+            return users != null ? users.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public List<User> getAllUsers() {
-        return new ArrayList<>(users);
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(users);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the next page of users matching a query, in registration order.
+     * The cursor's id is the last user of the previous page (pass null to start from the top).
+     */
+    public Page<User> searchUsersPage(String query, PageCursor after, int limit) {
+        lock.readLock().lock();
+        try {
+            List<User> found = userSearch.search(query, false, after != null ? after.getId() : null, limit + 1);
+            if (found.size() > limit) {
+                // One more match exists, so there is a next page
+                List<User> items = new ArrayList<>(found.subList(0, limit));
+                return new Page<>(items, new PageCursor(0, items.get(items.size() - 1).getId()));
+            }
+            return new Page<>(found, null);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public List<User> searchUsers(String query) {
-        String lowerQuery = query.toLowerCase();
-        ArrayList<User> results = new ArrayList<>();
-        for (User user : users) {
-            if (user.getUsername().toLowerCase().contains(lowerQuery) ||
-                user.getFullName().toLowerCase().contains(lowerQuery)) {
-                results.add(user);
+        return searchUsers(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Users whose username or full name contains the query, at most limit of them
+     */
+    public List<User> searchUsers(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            return userSearch.search(query, false, null, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Users whose username or a word of their full name starts with the prefix
+     */
+    public List<User> searchUsersByPrefix(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return userSearch.search(prefix, true, null, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Post> searchPosts(String query, int limit) {
+        return searchPosts(currentSession, query, limit);
+    }
+
+    /**
+     * Posts whose text, image caption or comments best match the query (BM25 ranking),
+     * limited to posts the session's user may see
+     */
+    public List<Post> searchPosts(Session session, String query, int limit) {
+        User viewer = userOf(session);
+        if (viewer == null) {
+            return new ArrayList<>();
+        }
+        TextSearchIndex index = textSearchIndex();
+        lock.readLock().lock();
+        try {
+            return index.search(query, limit, post -> canSeePost(viewer, post));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Check if the session's user may see a user's posts (for clients other than the
+     * desktop GUI, which decides this itself)
+     */
+    public boolean canSeePostsOf(Session session, String authorId) {
+        User viewer = userOf(session);
+        if (viewer == null || authorId == null) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return canSeePostsOf(viewer, authorId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private boolean canSeePost(User viewer, Post post) {
+        return canSeePostsOf(viewer, post.getAuthorId());
+    }
+    
+    // Same rule as the feed: own posts, public accounts and followed private accounts (admins see all)
+    private boolean canSeePostsOf(User viewer, String authorId) {
+        if (viewer instanceof Admin || authorId.equals(viewer.getId())) {
+            return true;
+        }
+        User author = getUserById(authorId);
+        return !(author instanceof RegularUser) || !((RegularUser) author).isPrivateAccount()
+               || viewer.isFollowing(author.getId());
+    }
+    
+    // Build the full-text index on first use, oldest post first. Built under the write
+    // lock so no comment added meanwhile is missed; call it without holding the read lock.
+    private TextSearchIndex textSearchIndex() {
+        if (textSearch != null) {
+            return textSearch;
+        }
+        lock.writeLock().lock();
+        try {
+            if (textSearch == null) {
+                TextSearchIndex index = new TextSearchIndex();
+                int loadedSegment = -1;
+                HashMap<String, Post> segmentCopies = new HashMap<>();
+                for (Post post : postsByTime.descendingMap().values()) {
+                    if (post.isBodyLoaded()) {
+                        index.addPost(post);
+                        continue;
+                    }
+                    // Lazy posts mode: read unloaded bodies from their segment file without
+                    // pulling them into the body cache (unloaded posts are always on disk)
+                    int segment = SegmentTracker.segmentOf(post.getId());
+                    if (segment != loadedSegment) {
+                        segmentCopies.clear();
+                        try {
+                            for (Post copy : DataPersistence.loadPostSegment(post.getId())) {
+                                segmentCopies.put(copy.getId(), copy);
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Could not index posts of segment " + segment + ": " + e.getMessage());
+                        }
+                        loadedSegment = segment;
+                    }
+                    Post copy = segmentCopies.get(post.getId());
+                    if (copy != null) {
+                        index.addPost(post, TextSearchIndex.bodyText(copy), copy.getComments());
+                    }
+                }
+                textSearch = index;
             }
+            return textSearch;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return results;
     }
 
     // ==================== POST MANAGEMENT ====================
 
     public TextPost createTextPost(String content) {
-        if (currentUser == null || content == null || content.trim().isEmpty()) {
-            return null;
-        }
+        return createTextPost(currentSession, content);
+    }
 
-        String id = "post_" + (postIdCounter++);
-        TextPost post = new TextPost(id, currentUser.getId(), currentUser.getUsername(),
-                                     currentUser.getFullName(), content);
-        posts.add(post);
-        currentUser.addPost(id);
-        saveData(); // Auto-save after creating post
-        return post;
+    public TextPost createTextPost(Session session, String content) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || content == null || content.trim().isEmpty()) {
+                return null;
+            }
+
+            String id = "post_" + postIdCounter.getAndIncrement();
+            TextPost post = new TextPost(id, actor.getId(), actor.getUsername(),
+                                         actor.getFullName(), content);
+            posts.add(post);
+            indexPost(post);
+            if (textSearch != null) {
+                textSearch.addPost(post);
+            }
+            actor.addPost(id);
+            fanOut(post, actor);
+            journal(DataPersistence.upsert(post), DataPersistence.upsert(actor)); // Auto-save after creating post
+            return post;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public ImagePost createImagePost(String imagePath, String caption) {
-        if (currentUser == null || imagePath == null || imagePath.trim().isEmpty()) {
+        return createImagePost(currentSession, imagePath, caption);
+    }
+
+    public ImagePost createImagePost(Session session, String imagePath, String caption) {
+        User actor = userOf(session);
+        if (actor == null || imagePath == null || imagePath.trim().isEmpty()) {
             return null;
         }
 
-        String id = "post_" + (postIdCounter++);
-        ImagePost post = new ImagePost(id, currentUser.getId(), currentUser.getUsername(),
-                                       currentUser.getFullName(), imagePath, caption);
-        posts.add(post);
-        currentUser.addPost(id);
-        saveData(); // Auto-save after creating post
+        String image = storeMedia(imagePath); // Copied before locking, so readers don't wait for it
+        if (image == null) {
+            return null;
+        }
+        ImagePost post;
+        lock.writeLock().lock();
+        try {
+            if (userOf(session) == null) { // Signed out or banned while the image was copied
+                MediaStore.getInstance().release(image); // Nothing refers to it
+                return null;
+            }
+            String id = "post_" + postIdCounter.getAndIncrement();
+            post = new ImagePost(id, actor.getId(), actor.getUsername(),
+                                 actor.getFullName(), image, caption);
+            posts.add(post);
+            indexPost(post);
+            if (textSearch != null) {
+                textSearch.addPost(post);
+            }
+            actor.addPost(id);
+            fanOut(post, actor);
+            journal(DataPersistence.upsert(post), DataPersistence.upsert(actor)); // Auto-save after creating post
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ThumbnailStore.getInstance().ingestPostImage(image);
         return post;
     }
 
     public Post getPostById(String id) {
-        for (Post post : posts) {
-            if (post.getId().equals(id)) {
-                return post;
-            }
+        if (id == null) {
+            return null;
         }
-        return null;
+        return postsById.get(id);
     }
 
     public List<Post> getAllPosts() {
-        ArrayList<Post> allPosts = new ArrayList<>(posts);
-        // Sort by timestamp, newest first
-        allPosts.sort((p1, p2) -> Long.compare(p2.getTimestamp(), p1.getTimestamp()));
-        return allPosts;
+        // Index is already sorted by timestamp, newest first
+        return new ArrayList<>(postsByTime.values());
     }
 
     public List<Post> getPostsByUser(String userId) {
-        ArrayList<Post> userPosts = new ArrayList<>();
-        for (Post post : posts) {
-            if (post.getAuthorId().equals(userId)) {
-                userPosts.add(post);
-            }
+        return new ArrayList<>(postsOf(userId));
+    }
+    
+    /**
+     * Get the next page of all posts, newest first (pass null to start from the top)
+     */
+    public Page<Post> getAllPostsPage(PageCursor after, int limit) {
+        return pageOf(postsByTime, after, limit);
+    }
+    
+    /**
+     * Get the next page of a user's posts, newest first (pass null to start from the top)
+     */
+    public Page<Post> getPostsByUserPage(String userId, PageCursor after, int limit) {
+        ConcurrentSkipListMap<PageCursor, Post> authored = postsByAuthor.get(userId);
+        if (authored == null) {
+            return new Page<>(new ArrayList<>(), null);
         }
-        userPosts.sort((p1, p2) -> Long.compare(p2.getTimestamp(), p1.getTimestamp()));
-        return userPosts;
+        return pageOf(authored, after, limit);
     }
 
     public List<Post> getFeedPosts() {
-        if (currentUser == null) {
-            return new ArrayList<>();
-        }
-        
-        // Admins see all posts, regular users see only posts from users they follow 
-        ArrayList<Post> feedPosts = new ArrayList<>();
+        return getFeedPosts(currentSession);
+    }
+
+    public List<Post> getFeedPosts(Session session) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null) {
+                return new ArrayList<>();
+            }
         
-        if (currentUser instanceof Admin) {
-          
-            feedPosts.addAll(posts);
-        } else {
-            // Also respect private account settings
-            for (Post post : posts) {
-                // Always show own posts
-                if (post.getAuthorId() != null && post.getAuthorId().equals(currentUser.getId())) {
-                    feedPosts.add(post);
-                    continue;
-                }
-                
-                User author = getUserById(post.getAuthorId());
-                
-                // Check if author exists (null check)
-                if (author == null) {
-                    continue; // Skip posts with invalid authors
-                }
-                
-                // Check if author is a regular user with private account
-                if (author instanceof RegularUser) {
-                    RegularUser authorRegular = (RegularUser) author;
-                    
-                    if (authorRegular.isPrivateAccount()) {
-                        // Private account - only show if following
-                        if (currentUser.isFollowing(post.getAuthorId())) {
-                            feedPosts.add(post);
-                        }
-                    } else {
-                        // Public account - show if following
-                        if (currentUser.isFollowing(post.getAuthorId())) {
-                            feedPosts.add(post);
-                        }
-                    }
-                } else {
-                    // Admin posts - show if following
-                    if (currentUser.isFollowing(post.getAuthorId())) {
-                        feedPosts.add(post);
-                    }
-                }
+            // Admins see all posts
+            if (actor instanceof Admin) {
+                return getAllPosts();
             }
-        }
         
-        // Sort by timestamp, newest first
-        feedPosts.sort((p1, p2) -> Long.compare(p2.getTimestamp(), p1.getTimestamp()));
-        return feedPosts;
+            // Regular users see their own posts and posts from users they follow
+            // (private accounts included, since following them required approval)
+            return new ArrayList<>(timelineFor(actor).getPosts());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public Page<Post> getFeedPage(PageCursor after, int limit) {
+        return getFeedPage(currentSession, after, limit);
     }
 
+    /**
+     * Get the next page of the session user's feed (pass null to start from the top)
+     */
+    public Page<Post> getFeedPage(Session session, PageCursor after, int limit) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null) {
+                return new Page<>(new ArrayList<>(), null);
+            }
+            if (actor instanceof Admin) {
+                return pageOf(postsByTime, after, limit);
+            }
+            return timelineFor(actor).page(after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Helper: Take up to limit posts that come after the cursor in a newest-first index
+    private static Page<Post> pageOf(NavigableMap<PageCursor, Post> index, PageCursor after, int limit) {
+        Collection<Post> rest = (after == null) ? index.values() : index.tailMap(after, false).values();
+        ArrayList<Post> items = new ArrayList<>(Math.min(limit, rest.size()));
+        Iterator<Post> iterator = rest.iterator();
+        while (items.size() < limit && iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+        PageCursor next = (iterator.hasNext() && !items.isEmpty()) ? PageCursor.of(items.get(items.size() - 1)) : null;
+        return new Page<>(items, next);
+    }
     public boolean deletePost(String postId) {
-        Post post = getPostById(postId);
-        if (post == null) return false;
+        return deletePost(currentSession, postId);
+    }
+
+    public boolean deletePost(Session session, String postId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            Post post = getPostById(postId);
+            if (post == null) return false;
 
-        // Check permissions
-        if (currentUser == null) return false;
+            // Check permissions
+            if (actor == null) return false;
         
-        boolean canDelete = post.getAuthorId().equals(currentUser.getId()) ||
-                           currentUser.canDeleteAnyPost();
+            boolean canDelete = post.getAuthorId().equals(actor.getId()) ||
+                               actor.canDeleteAnyPost();
         
-        if (canDelete) {
-            User author = getUserById(post.getAuthorId());
-            if (author != null) {
-                author.removePost(postId);
+            if (canDelete) {
+                User author = getUserById(post.getAuthorId());
+                String image = post instanceof ImagePost ? ((ImagePost) post).getImagePath() : null;
+                posts.remove(post);
+                unindexPost(post);
+                if (textSearch != null) {
+                    textSearch.removePost(postId);
+                }
+                if (author != null) {
+                    removeFromTimelines(post, author);
+                    author.removePost(postId);
+                    releaseMediaWhenWritten(image, // Auto-save after deleting post
+                        journal(DataPersistence.deletePost(postId), DataPersistence.upsert(author)));
+                } else {
+                    timelines.clear(); // Unknown author, so the affected timelines are unknown too
+                    releaseMediaWhenWritten(image, journal(DataPersistence.deletePost(postId)));
+                }
+                return true;
             }
-            posts.remove(post);
-            saveData(); // Auto-save after deleting post
-            return true;
+            return false;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
     }
 
     // ==================== SOCIAL INTERACTIONS ====================
 
     public boolean likePost(String postId) {
-        if (currentUser == null) return false;
+        return likePost(currentSession, postId);
+    }
+
+    public boolean likePost(Session session, String postId) {
+        User actor = userOf(session);
+        if (actor == null) return false;
         
-        Post post = getPostById(postId);
-        if (post != null) {
-            if (post.isLikedBy(currentUser.getId())) {
-                post.removeLike(currentUser.getId());
-            } else {
-                post.addLike(currentUser.getId());
+        boolean liked = false;
+        lock.readLock().lock();
+        try {
+            Post post = getPostById(postId);
+            if (post != null) {
+                Lock postLock = postLock(postId);
+                postLock.lock();
+                try {
+                    post.toggleLike(actor.getId());
+                    journal(DataPersistence.upsert(post)); // Auto-save after like/unlike
+                } finally {
+                    postLock.unlock();
+                }
+                liked = true;
             }
-            saveData(); // Auto-save after like/unlike
-            return true;
+        } finally {
+            lock.readLock().unlock();
         }
-        return false;
+        checkpointIfDue();
+        return liked;
     }
 
     public boolean isPostLikedByCurrentUser(String postId) {
-        if (currentUser == null) return false;
+        return isPostLiked(currentSession, postId);
+    }
+
+    public boolean isPostLiked(Session session, String postId) {
+        User actor = userOf(session);
+        if (actor == null) return false;
         Post post = getPostById(postId);
-        return post != null && post.isLikedBy(currentUser.getId());
+        return post != null && post.isLikedBy(actor.getId());
     }
 
     public Comment addComment(String postId, String content) {
-        if (currentUser == null || content == null || content.trim().isEmpty()) {
-            return null;
+        return addComment(currentSession, postId, content);
+    }
+
+    public Comment addComment(Session session, String postId, String content) {
+        User actor = userOf(session);
+        if (actor == null || content == null || content.trim().isEmpty()) {
+            return null;
         }
 
-        Post post = getPostById(postId);
-        if (post == null) return null;
+        Comment comment;
+        lock.readLock().lock();
+        try {
+            Post post = getPostById(postId);
+            if (post == null) return null;
 
-        String commentId = "comment_" + (commentIdCounter++);
-        Comment comment = new Comment(commentId, postId, currentUser.getId(),
-                                     currentUser.getUsername(), currentUser.getFullName(), content);
-        post.addComment(comment);
-        saveData(); // Auto-save after adding comment
+            String commentId = "comment_" + commentIdCounter.getAndIncrement();
+            comment = new Comment(commentId, postId, actor.getId(),
+                                  actor.getUsername(), actor.getFullName(), content);
+            Lock postLock = postLock(postId);
+            postLock.lock();
+            try {
+                post.addComment(comment);
+                if (textSearch != null) {
+                    textSearch.addComment(post, comment);
+                }
+                journal(DataPersistence.upsert(post)); // Auto-save after adding comment
+            } finally {
+                postLock.unlock();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        checkpointIfDue();
         return comment;
     }
 
     public boolean followUser(String userId) {
-        if (currentUser == null || currentUser.getId().equals(userId)) {
-            return false;
-        }
+        return followUser(currentSession, userId);
+    }
+
+    public boolean followUser(Session session, String userId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || actor.getId().equals(userId)) {
+                return false;
+            }
         
-        // Prevent admins from following anyone
-        if (currentUser instanceof Admin) {
-            return false;
-        }
+            // Prevent admins from following anyone
+            if (actor instanceof Admin) {
+                return false;
+            }
 
-        User targetUser = getUserById(userId);
-        if (targetUser == null || !(targetUser instanceof RegularUser)) {
-            return false;
-        }
+            User targetUser = getUserById(userId);
+            if (targetUser == null || !(targetUser instanceof RegularUser)) {
+                return false;
+            }
         
-        RegularUser targetRegular = (RegularUser) targetUser;
+            RegularUser targetRegular = (RegularUser) targetUser;
         
-        // If already following, unfollow
-        if (currentUser.isFollowing(userId)) {
-            currentUser.unfollow(userId);
-            targetUser.removeFollower(currentUser.getId());
-            // Also remove any pending requests when unfollowing
-            targetRegular.removeFollowRequest(currentUser.getId());
-            saveData();
-            return true;
-        }
+            // If already following, unfollow
+            if (actor.isFollowing(userId)) {
+                actor.unfollow(userId);
+                targetUser.removeFollower(actor.getId());
+                pruneTimeline(actor.getId(), userId);
+                // Also remove any pending requests when unfollowing
+                targetRegular.removeFollowRequest(actor.getId());
+                journal(DataPersistence.upsert(actor), DataPersistence.upsert(targetUser));
+                return true;
+            }
         
-        // Check if there's a pending request
-        boolean hasPendingRequest = targetRegular.hasPendingRequestFrom(currentUser.getId());
+            // Check if there's a pending request
+            boolean hasPendingRequest = targetRegular.hasPendingRequestFrom(actor.getId());
         
-        // If target account is private
-        if (targetRegular.isPrivateAccount()) {
-            if (hasPendingRequest) {
-                // Cancel the request
-                targetRegular.removeFollowRequest(currentUser.getId());
+            // If target account is private
+            if (targetRegular.isPrivateAccount()) {
+                if (hasPendingRequest) {
+                    // Cancel the request
+                    targetRegular.removeFollowRequest(actor.getId());
+                } else {
+                    // Send follow request
+                    targetRegular.addFollowRequest(actor.getId());
+                }
+                journal(DataPersistence.upsert(targetUser));
+                return true;
             } else {
-                // Send follow request
-                targetRegular.addFollowRequest(currentUser.getId());
+                // Public account - follow directly
+                // First, remove any stale pending requests
+                if (hasPendingRequest) {
+                    targetRegular.removeFollowRequest(actor.getId());
+                }
+                actor.follow(userId);
+                targetUser.addFollower(actor.getId());
+                backfillTimeline(actor.getId(), userId);
+                journal(DataPersistence.upsert(actor), DataPersistence.upsert(targetUser));
+                return true;
             }
-            saveData();
-            return true;
-        } else {
-            // Public account - follow directly
-            // First, remove any stale pending requests
-            if (hasPendingRequest) {
-                targetRegular.removeFollowRequest(currentUser.getId());
-            }
-            currentUser.follow(userId);
-            targetUser.addFollower(currentUser.getId());
-            saveData();
-            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     public boolean isFollowingUser(String userId) {
-        return currentUser != null && currentUser.isFollowing(userId);
+        return isFollowingUser(currentSession, userId);
+    }
+
+    public boolean isFollowingUser(Session session, String userId) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            return actor != null && actor.isFollowing(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
+    public boolean approveFollowRequest(String requesterId) {
+        return approveFollowRequest(currentSession, requesterId);
+    }
+
     /**
      * Approve a follow request (for private accounts)
      */
-    public boolean approveFollowRequest(String requesterId) {
-        if (currentUser == null || !(currentUser instanceof RegularUser)) {
-            return false;
-        }
+    public boolean approveFollowRequest(Session session, String requesterId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof RegularUser)) {
+                return false;
+            }
         
-        RegularUser currentRegular = (RegularUser) currentUser;
-        User requester = getUserById(requesterId);
+            RegularUser currentRegular = (RegularUser) actor;
+            User requester = getUserById(requesterId);
         
-        if (requester == null) {
-            return false;
-        }
+            if (requester == null) {
+                return false;
+            }
         
-        // Check if there's actually a pending request
-        if (!currentRegular.hasPendingRequestFrom(requesterId)) {
-            return false;
-        }
+            // Check if there's actually a pending request
+            if (!currentRegular.hasPendingRequestFrom(requesterId)) {
+                return false;
+            }
         
-        // Remove the request
-        currentRegular.removeFollowRequest(requesterId);
+            // Remove the request
+            currentRegular.removeFollowRequest(requesterId);
         
-        // Add to followers/following
-        requester.follow(currentUser.getId());
-        currentUser.addFollower(requesterId);
+            // Add to followers/following
+            requester.follow(actor.getId());
+            actor.addFollower(requesterId);
+            backfillTimeline(requesterId, actor.getId());
         
-        saveData();
-        return true;
+            journal(DataPersistence.upsert(requester), DataPersistence.upsert(actor));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
+    public boolean rejectFollowRequest(String requesterId) {
+        return rejectFollowRequest(currentSession, requesterId);
+    }
+
     /**
      * Reject a follow request
      */
-    public boolean rejectFollowRequest(String requesterId) {
-        if (currentUser == null || !(currentUser instanceof RegularUser)) {
-            return false;
-        }
+    public boolean rejectFollowRequest(Session session, String requesterId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof RegularUser)) {
+                return false;
+            }
         
-        RegularUser currentRegular = (RegularUser) currentUser;
+            RegularUser currentRegular = (RegularUser) actor;
         
-        if (currentRegular.hasPendingRequestFrom(requesterId)) {
-            currentRegular.removeFollowRequest(requesterId);
-            saveData();
-            return true;
-        }
+            if (currentRegular.hasPendingRequestFrom(requesterId)) {
+                currentRegular.removeFollowRequest(requesterId);
+                journal(DataPersistence.upsert(actor));
+                return true;
+            }
         
-        return false;
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
+    public boolean hasSentFollowRequest(String userId) {
+        return hasSentFollowRequest(currentSession, userId);
+    }
+
     /**
-     * Check if current user has sent a follow request to a user
+     * Check if the session's user has sent a follow request to a user
      */
-    public boolean hasSentFollowRequest(String userId) {
-        if (currentUser == null) {
-            return false;
-        }
+    public boolean hasSentFollowRequest(Session session, String userId) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null) {
+                return false;
+            }
         
-        User targetUser = getUserById(userId);
-        if (targetUser instanceof RegularUser) {
-            RegularUser targetRegular = (RegularUser) targetUser;
-            return targetRegular.hasPendingRequestFrom(currentUser.getId());
-        }
+            User targetUser = getUserById(userId);
+            if (targetUser instanceof RegularUser) {
+                RegularUser targetRegular = (RegularUser) targetUser;
+                return targetRegular.hasPendingRequestFrom(actor.getId());
+            }
         
-        return false;
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
+    public List<String> getPendingFollowRequests() {
+        return getPendingFollowRequests(currentSession);
+    }
+
     /**
-     * Get pending follow requests for current user
+     * Get pending follow requests for the session's user (a copy, safe to use after other changes)
      */
-    public List<String> getPendingFollowRequests() {
-        if (currentUser instanceof RegularUser) {
-            RegularUser currentRegular = (RegularUser) currentUser;
-            return currentRegular.getPendingFollowRequests();
+    public List<String> getPendingFollowRequests(Session session) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor instanceof RegularUser) {
+                RegularUser currentRegular = (RegularUser) actor;
+                return new ArrayList<>(currentRegular.getPendingFollowRequests());
+            }
+            return new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
         }
-        return new ArrayList<>();
     }
     
+    public int getPendingFollowRequestCount() {
+        return getPendingFollowRequestCount(currentSession);
+    }
+
     /**
      * Get count of pending follow requests
      */
-    public int getPendingFollowRequestCount() {
-        if (currentUser instanceof RegularUser) {
-            RegularUser currentRegular = (RegularUser) currentUser;
-            return currentRegular.getPendingRequestCount();
+    public int getPendingFollowRequestCount(Session session) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor instanceof RegularUser) {
+                RegularUser currentRegular = (RegularUser) actor;
+                return currentRegular.getPendingRequestCount();
+            }
+            return 0;
+        } finally {
+            lock.readLock().unlock();
         }
-        return 0;
     }
 
     // ==================== VERIFICATION MANAGEMENT ====================
 
     
+    public boolean requestVerification(String contentFilePath) {
+        return requestVerification(currentSession, contentFilePath);
+    }
+
     /**
      * Request verification 
      */
-    public boolean requestVerification(String contentFilePath) {
-        if (currentUser == null || !(currentUser instanceof RegularUser)) {
+    public boolean requestVerification(Session session, String contentFilePath) {
+        if (!(userOf(session) instanceof RegularUser)) {
             return false; // Only regular users can request verification
         }
-        
-        // Check if already has pending request
-        for (VerificationRequest req : verificationRequests) {
-            if (req.getUserId().equals(currentUser.getId()) && !req.isResolved()) {
-                return false; // Already has pending request
-            }
+        String content = storeMedia(contentFilePath); // Copied before locking, so readers don't wait for it
+        if (content == null && contentFilePath != null) {
+            return false;
         }
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            boolean pending = actor == null; // Signed out meanwhile
+            // Check if already has pending request
+            for (VerificationRequest req : verificationRequests) {
+                if (!pending && req.getUserId().equals(actor.getId()) && !req.isResolved()) {
+                    pending = true; // Already has pending request
+                }
+            }
+            if (pending) {
+                MediaStore.getInstance().release(content); // Nothing refers to it
+                return false;
+            }
         
-        VerificationRequest request = new VerificationRequest(
-            currentUser.getId(),
-            currentUser.getUsername(),
-            currentUser.getFullName(),
-            contentFilePath
-        );
+            VerificationRequest request = new VerificationRequest(
+                actor.getId(),
+                actor.getUsername(),
+                actor.getFullName(),
+                content
+            );
         
-        verificationRequests.add(request);
-        saveData();
-        return true;
+            verificationRequests.add(request);
+            journal(DataPersistence.upsert(request));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
     /**
      * Check if user has pending verification request
      */
     public boolean hasPendingVerificationRequest(String userId) {
-        for (VerificationRequest req : verificationRequests) {
-            if (req.getUserId().equals(userId) && !req.isResolved()) {
-                return true;
+        lock.readLock().lock();
+        try {
+            for (VerificationRequest req : verificationRequests) {
+                if (req.getUserId().equals(userId) && !req.isResolved()) {
+                    return true;
+                }
             }
+            return false;
+        } finally {
+            lock.readLock().unlock();
         }
-        return false;
     }
     
+    public List<VerificationRequest> getPendingVerificationRequests() {
+        return getPendingVerificationRequests(currentSession);
+    }
+
     /**
      * Get all pending verification requests (admin only)
      */
-    public List<VerificationRequest> getPendingVerificationRequests() {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return new ArrayList<>();
-        }
+    public List<VerificationRequest> getPendingVerificationRequests(Session session) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return new ArrayList<>();
+            }
         
-        List<VerificationRequest> pending = new ArrayList<>();
-        for (VerificationRequest req : verificationRequests) {
-            if (!req.isResolved()) {
-                pending.add(req);
+            List<VerificationRequest> pending = new ArrayList<>();
+            for (VerificationRequest req : verificationRequests) {
+                if (!req.isResolved()) {
+                    pending.add(req);
+                }
             }
-        }
         
-        // Sort by timestamp, newest first
-        pending.sort((r1, r2) -> Long.compare(r2.getTimestamp(), r1.getTimestamp()));
+            // Sort by timestamp, newest first
+            pending.sort((r1, r2) -> Long.compare(r2.getTimestamp(), r1.getTimestamp()));
         
-        return pending;
+            return pending;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
+    public boolean verifyUser(String userId) {
+        return verifyUser(currentSession, userId);
+    }
+
     /**
      * Verify a user (admin only)
      */
-    public boolean verifyUser(String userId) {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return false;
-        }
-        User user = getUserById(userId);
-        if (user instanceof RegularUser) {
-            RegularUser regularUser = (RegularUser) user;
-            regularUser.setVerified(true);
+    public boolean verifyUser(Session session, String userId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return false;
+            }
+            User user = getUserById(userId);
+            if (user instanceof RegularUser) {
+                RegularUser regularUser = (RegularUser) user;
+                regularUser.setVerified(true);
             
-            // Mark all requests for this user as resolved
-            for (VerificationRequest req : verificationRequests) {
-                if (req.getUserId().equals(userId)) {
-                    req.setResolved(true);
+                // Mark all requests for this user as resolved
+                ArrayList<DataPersistence.JournalEntry> changes = new ArrayList<>();
+                List<String> contents = new ArrayList<>();
+                changes.add(DataPersistence.upsert(user));
+                for (VerificationRequest req : verificationRequests) {
+                    if (req.getUserId().equals(userId) && !req.isResolved()) {
+                        req.setResolved(true);
+                        changes.add(DataPersistence.upsert(req));
+                        if (MediaStore.isReference(req.getContentFilePath())) {
+                            contents.add(req.getContentFilePath());
+                        }
+                    }
                 }
-            }
             
-            saveData();
-            return true;
+                // Resolved requests no longer need their content
+                releaseMediaWhenWritten(contents, journal(changes.toArray(new DataPersistence.JournalEntry[0])));
+                return true;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
     }
     
+    public boolean rejectVerificationRequest(String userId) {
+        return rejectVerificationRequest(currentSession, userId);
+    }
+
     /**
      * Reject a verification request (admin only)
      */
-    public boolean rejectVerificationRequest(String userId) {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return false;
-        }
+    public boolean rejectVerificationRequest(Session session, String userId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return false;
+            }
         
-        // Mark pending requests as resolved
-        boolean found = false;
-        for (VerificationRequest req : verificationRequests) {
-            if (req.getUserId().equals(userId) && !req.isResolved()) {
-                req.setResolved(true);
-                found = true;
+            // Mark pending requests as resolved
+            ArrayList<DataPersistence.JournalEntry> changes = new ArrayList<>();
+            List<String> contents = new ArrayList<>();
+            for (VerificationRequest req : verificationRequests) {
+                if (req.getUserId().equals(userId) && !req.isResolved()) {
+                    req.setResolved(true);
+                    changes.add(DataPersistence.upsert(req));
+                    if (MediaStore.isReference(req.getContentFilePath())) {
+                        contents.add(req.getContentFilePath());
+                    }
+                }
             }
-        }
         
-        if (found) {
-            saveData();
-            return true;
+            if (!changes.isEmpty()) {
+                // Resolved requests no longer need their content
+                releaseMediaWhenWritten(contents, journal(changes.toArray(new DataPersistence.JournalEntry[0])));
+                return true;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
     }
     
+    public boolean unverifyUser(String userId) {
+        return unverifyUser(currentSession, userId);
+    }
+
     /**
      * Unverify a user (admin only)
      */
-    public boolean unverifyUser(String userId) {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
+    public boolean unverifyUser(Session session, String userId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return false;
+            }
+            User user = getUserById(userId);
+            if (user instanceof RegularUser) {
+                RegularUser regularUser = (RegularUser) user;
+                regularUser.setVerified(false);
+                journal(DataPersistence.upsert(user));
+                return true;
+            }
             return false;
+        } finally {
+            lock.writeLock().unlock();
         }
-        User user = getUserById(userId);
-        if (user instanceof RegularUser) {
-            RegularUser regularUser = (RegularUser) user;
-            regularUser.setVerified(false);
-            saveData();
-            return true;
-        }
-        return false;
     }
     
     // ==================== BAN MANAGEMENT ====================
     
+    public boolean banUser(String userId) {
+        return banUser(currentSession, userId);
+    }
+
     /**
      * Ban a user (admin only)
      */
-    public boolean banUser(String userId) {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return false; // Only admins can ban
-        }
-        User targetUser = getUserById(userId);
-        if (targetUser == null || targetUser instanceof Admin) {
-            return false; // Cannot ban admins or non-existent users
-        }
+    public boolean banUser(Session session, String userId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return false; // Only admins can ban
+            }
+            User targetUser = getUserById(userId);
+            if (targetUser == null || targetUser instanceof Admin) {
+                return false; // Cannot ban admins or non-existent users
+            }
         
-        Admin admin = (Admin) currentUser;
-        admin.banUser(userId);
-        saveData();
-        return true;
+            Admin admin = (Admin) actor;
+            admin.banUser(userId);
+            indexBan(userId, admin.getId());
+            closeSessionsOf(userId);
+            journal(DataPersistence.upsert(admin));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
+    public boolean unbanUser(String userId) {
+        return unbanUser(currentSession, userId);
+    }
+
     /**
      * Unban a user (admin only)
      */
-    public boolean unbanUser(String userId) {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return false; // Only admins can unban
-        }
+    public boolean unbanUser(Session session, String userId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return false; // Only admins can unban
+            }
         
-        Admin admin = (Admin) currentUser;
-        admin.unbanUser(userId);
-        saveData();
-        return true;
+            Admin admin = (Admin) actor;
+            admin.unbanUser(userId);
+            unindexBan(userId, admin.getId());
+            journal(DataPersistence.upsert(admin));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
     /**
@@ -685,6 +1363,19 @@ public class SocialNetworkSystem {
     public boolean isUserBannedByAdmin(String userId) {
         return isUserBanned(userId);
     }
+    
+    /**
+     * Get the ids of the admins who banned a user (empty if not banned)
+     */
+    public List<String> getBanningAdmins(String userId) {
+        lock.readLock().lock();
+        try {
+            LinkedHashSet<String> admins = bannedBy.get(userId);
+            return admins != null ? new ArrayList<>(admins) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
     // ==================== SAMPLE DATA ====================
 
@@ -706,9 +1397,10 @@ public class SocialNetworkSystem {
         Admin admin = (Admin) registerUser("admin", "admin123", 
             "System Admin", "admin@socialconnect.com", 30, true);
         admin.setBio("Platform Administrator");
-
-        // Reset current user
-        currentUser = null;
+        
+        // Bios were set after registration, so write a complete snapshot
+        DataPersistence.markAllDirty();
+        saveData();
     }
 
     // ==================== DATA PERSISTENCE ====================
@@ -717,14 +1409,14 @@ public class SocialNetworkSystem {
      * Load saved data from files
      */
     private boolean loadSavedData() {
-        DataPersistence.LoadResult result = DataPersistence.loadData();
+        DataPersistence.LoadResult result = DataPersistence.loadData(postBodies);
         if (result.success && !result.users.isEmpty()) {
             this.users = result.users;
             this.posts = result.posts;
-            this.userIdCounter = result.userIdCounter;
-            this.postIdCounter = result.postIdCounter;
-            this.commentIdCounter = result.commentIdCounter;
-            this.reportIdCounter = result.reportIdCounter;
+            this.userIdCounter.set(result.userIdCounter);
+            this.postIdCounter.set(result.postIdCounter);
+            this.commentIdCounter.set(result.commentIdCounter);
+            this.reportIdCounter.set(result.reportIdCounter);
             // Handle backward compatibility for verification requests
             if (result.verificationRequests != null) {
                 this.verificationRequests = result.verificationRequests;
@@ -732,10 +1424,28 @@ public class SocialNetworkSystem {
                 this.verificationRequests = new ArrayList<>();
             }
             this.commentReports = result.commentReports != null ? result.commentReports : new ArrayList<>();
-            System.out.println("✓ Loaded saved data: " + users.size() + " users, " + posts.size() + " posts");
+            this.journalRecordCount.set(result.journalRecordCount);
+            
+            // Post indexes build on another thread while users are indexed and migrated here
+            CompletableFuture<Void> postIndexing = CompletableFuture.runAsync(this::rebuildPostIndexes);
+            rebuildUserIndexes();
             
             // Migrate old plain text passwords to hashed passwords
-            migratePasswordsIfNeeded();
+            boolean passwordsMigrated = migratePasswordsIfNeeded();
+            postIndexing.join();
+            System.out.println("✓ Loaded saved data: " + users.size() + " users, " + posts.size() + " posts");
+            if (MediaStore.getInstance().needsRebuild()) {
+                MediaStore.getInstance().rebuildRefs(mediaReferences());
+            }
+            
+            // Rewrite files that were loaded from a legacy format or cipher
+            if (result.needsMigration) {
+                System.out.println("Rewriting data files in the current format...");
+            }
+            if (passwordsMigrated || result.needsMigration) {
+                DataPersistence.markAllDirty(); // Password changes were not journaled
+                saveData();
+            }
             
             return true;
         }
@@ -743,7 +1453,203 @@ public class SocialNetworkSystem {
     }
     
 
-    private void migratePasswordsIfNeeded() {
+    // Helper: Every media value the data holds, once per holder (loads lazy post bodies)
+    private List<String> mediaReferences() {
+        List<String> references = new ArrayList<>();
+        for (User user : users) {
+            references.add(user.getProfilePhotoPath());
+        }
+        for (Post post : posts) {
+            if (post instanceof ImagePost) {
+                references.add(((ImagePost) post).getImagePath());
+            }
+        }
+        for (VerificationRequest request : verificationRequests) {
+            if (!request.isResolved()) { // Released once resolved
+                references.add(request.getContentFilePath());
+            }
+        }
+        return references;
+    }
+
+    // ==================== INDEXES ====================
+    
+    private static String usernameKey(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+    
+    private static String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private void indexPost(Post post) {
+        if (postBodies != null) {
+            post.setBodySource(postBodies); // Tracked by the cache from its first access
+        }
+        PageCursor key = PageCursor.of(post);
+        postsById.put(post.getId(), post);
+        postsByTime.put(key, post);
+        postsByAuthor.computeIfAbsent(post.getAuthorId(), k -> new ConcurrentSkipListMap<>()).put(key, post);
+    }
+    
+    private void unindexPost(Post post) {
+        if (postBodies != null) {
+            postBodies.remove(post.getId());
+        }
+        PageCursor key = PageCursor.of(post);
+        postsById.remove(post.getId());
+        postsByTime.remove(key);
+        ConcurrentSkipListMap<PageCursor, Post> authored = postsByAuthor.get(post.getAuthorId());
+        if (authored != null) {
+            authored.remove(key);
+        }
+    }
+    
+    // Posts written by a user, newest first (read-only view)
+    private Collection<Post> postsOf(String userId) {
+        ConcurrentSkipListMap<PageCursor, Post> authored = postsByAuthor.get(userId);
+        return authored != null ? Collections.unmodifiableCollection(authored.values()) : Collections.emptyList();
+    }
+    
+    private void indexUser(User user) {
+        usersById.put(user.getId(), user);
+        if (user.getUsername() != null) {
+            // First registration wins, same as the old linear scan
+            usersByUsername.putIfAbsent(usernameKey(user.getUsername()), user);
+        }
+        if (user.getEmail() != null) {
+            usersByEmail.putIfAbsent(emailKey(user.getEmail()), user);
+        }
+        userSearch.add(user);
+        if (user instanceof Admin) {
+            for (String bannedId : ((Admin) user).getBannedUserIds()) {
+                indexBan(bannedId, user.getId());
+            }
+        }
+    }
+    
+    private void indexBan(String userId, String adminId) {
+        bannedBy.computeIfAbsent(userId, k -> new LinkedHashSet<>()).add(adminId);
+    }
+    
+    private void unindexBan(String userId, String adminId) {
+        LinkedHashSet<String> admins = bannedBy.get(userId);
+        if (admins != null && admins.remove(adminId) && admins.isEmpty()) {
+            bannedBy.remove(userId);
+        }
+    }
+    
+    /**
+     * Rebuild the user lookup indexes from the users list (after loading)
+     */
+    private void rebuildUserIndexes() {
+        usersById = new ConcurrentHashMap<>(users.size() * 2);
+        usersByUsername = new ConcurrentHashMap<>(users.size() * 2);
+        usersByEmail = new ConcurrentHashMap<>(users.size() * 2);
+        bannedBy = new ConcurrentHashMap<>();
+        userSearch = new UserSearchIndex();
+        for (User user : users) {
+            if (user != null) {
+                indexUser(user);
+            }
+        }
+    }
+    
+    /**
+     * Rebuild the post indexes from the posts list (after loading).
+     * Only touches post indexes, so it can run alongside rebuildUserIndexes.
+     */
+    private void rebuildPostIndexes() {
+        postsById = new ConcurrentHashMap<>(posts.size() * 2);
+        postsByTime = new ConcurrentSkipListMap<>();
+        postsByAuthor = new ConcurrentHashMap<>();
+        for (Post post : posts) {
+            indexPost(post);
+        }
+        timelines.clear();
+        textSearch = null; // Rebuilt on the next post search
+    }
+    
+    // ==================== TIMELINES ====================
+    
+    /**
+     * Get a user's home timeline, building it on first use (under the read lock, so two
+     * readers may build it at once; the first one stored is kept)
+     */
+    private TimelineStore.Timeline timelineFor(User user) {
+        TimelineStore.Timeline timeline = timelines.get(user.getId());
+        if (timeline == null) {
+            List<List<Post>> sources = new ArrayList<>();
+            sources.add(newestPostsOf(user.getId()));
+            for (String followedId : user.getFollowing()) {
+                if (getUserById(followedId) != null) { // Skip posts of missing authors
+                    sources.add(newestPostsOf(followedId));
+                }
+            }
+            timeline = TimelineStore.Timeline.of(sources);
+            TimelineStore.Timeline stored = timelines.putIfAbsent(user.getId(), timeline);
+            if (stored != null) {
+                timeline = stored;
+            }
+        }
+        return timeline;
+    }
+    
+    // At most one timeline's worth of a user's newest posts
+    private List<Post> newestPostsOf(String userId) {
+        ArrayList<Post> newest = new ArrayList<>();
+        for (Post post : postsOf(userId)) {
+            if (newest.size() == TimelineStore.CAPACITY) {
+                break;
+            }
+            newest.add(post);
+        }
+        return newest;
+    }
+    
+    // Push a new post into the author's and followers' timelines that are already built
+    private void fanOut(Post post, User author) {
+        TimelineStore.Timeline own = timelines.get(author.getId());
+        if (own != null) {
+            own.add(post);
+        }
+        for (String followerId : author.getFollowers()) {
+            TimelineStore.Timeline timeline = timelines.get(followerId);
+            if (timeline != null) {
+                timeline.add(post);
+            }
+        }
+    }
+    
+    private void removeFromTimelines(Post post, User author) {
+        TimelineStore.Timeline own = timelines.get(author.getId());
+        if (own != null) {
+            own.remove(post.getId());
+        }
+        for (String followerId : author.getFollowers()) {
+            TimelineStore.Timeline timeline = timelines.get(followerId);
+            if (timeline != null) {
+                timeline.remove(post.getId());
+            }
+        }
+    }
+    
+    private void backfillTimeline(String followerId, String followedId) {
+        TimelineStore.Timeline timeline = timelines.get(followerId);
+        if (timeline != null) {
+            timeline.addAll(newestPostsOf(followedId));
+        }
+    }
+    
+    private void pruneTimeline(String followerId, String unfollowedId) {
+        TimelineStore.Timeline timeline = timelines.get(followerId);
+        if (timeline != null && !timeline.removeAuthor(unfollowedId)) {
+            timelines.invalidate(followerId);
+        }
+    }
+
+    // Returns true if any password was migrated (the caller saves)
+    private boolean migratePasswordsIfNeeded() {
         boolean needsSave = false;
         for (User user : users) {
             String storedPassword = user.getPassword();
@@ -758,182 +1664,400 @@ public class SocialNetworkSystem {
         }
         if (needsSave) {
             System.out.println("Password migration complete. Saving updated data...");
-            saveData();
         }
+        return needsSave;
     }
     
     // ==================== PROFILE PHOTO MANAGEMENT ====================
     
+    public boolean updateProfilePhoto(String photoPath) {
+        return updateProfilePhoto(currentSession, photoPath);
+    }
+
     /**
      * Update user's profile photo
      */
-    public boolean updateProfilePhoto(String photoPath) {
-        if (currentUser == null) {
+    public boolean updateProfilePhoto(Session session, String photoPath) {
+        User actor = userOf(session);
+        if (actor == null) {
             return false;
         }
-        currentUser.setProfilePhotoPath(photoPath);
-        saveData();
+        String photo = photoPath == null || photoPath.isEmpty() ? photoPath : storeMedia(photoPath);
+        if (photo == null && photoPath != null) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            if (userOf(session) == null) { // Signed out or banned while the photo was copied
+                MediaStore.getInstance().release(photo); // Nothing refers to it
+                return false;
+            }
+            String oldPhoto = actor.getProfilePhotoPath();
+            actor.setProfilePhotoPath(photo);
+            // The old photo is released once nothing on disk refers to it any more
+            releaseMediaWhenWritten(oldPhoto, journal(DataPersistence.upsert(actor)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ThumbnailStore.getInstance().ingestProfilePhoto(photo);
         return true;
     }
     
+    public boolean updateProfile(String fullName, String bio) {
+        return updateProfile(currentSession, fullName, bio);
+    }
+
+    /**
+     * Update the session user's name and bio
+     */
+    public boolean updateProfile(Session session, String fullName, String bio) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null) {
+                return false;
+            }
+            actor.setFullName(fullName);
+            actor.setBio(bio);
+            userSearch.update(actor);
+            journal(DataPersistence.upsert(actor));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
     // ==================== COMMENT REPORTING ====================
     
+    public boolean reportComment(String commentId, String postId, String reason) {
+        return reportComment(currentSession, commentId, postId, reason);
+    }
+
     /**
      * Report a comment as inappropriate
      */
-    public boolean reportComment(String commentId, String postId, String reason) {
-        if (currentUser == null || reason == null || reason.trim().isEmpty()) {
-            return false;
-        }
+    public boolean reportComment(Session session, String commentId, String postId, String reason) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || reason == null || reason.trim().isEmpty()) {
+                return false;
+            }
         
-        // Find the comment
-        Post post = getPostById(postId);
-        if (post == null) {
-            return false;
-        }
+            // Find the comment
+            Post post = getPostById(postId);
+            if (post == null) {
+                return false;
+            }
         
-        Comment comment = null;
-        for (Comment c : post.getComments()) {
-            if (c.getId().equals(commentId)) {
-                comment = c;
-                break;
+            Comment comment = null;
+            for (Comment c : post.getComments()) {
+                if (c.getId().equals(commentId)) {
+                    comment = c;
+                    break;
+                }
             }
-        }
         
-        if (comment == null) {
-            return false;
-        }
+            if (comment == null) {
+                return false;
+            }
         
-        // Can't report your own comment
-        if (comment.getAuthorId().equals(currentUser.getId())) {
-            return false;
-        }
+            // Can't report your own comment
+            if (comment.getAuthorId().equals(actor.getId())) {
+                return false;
+            }
         
-        // Check if already reported by this user
-        for (CommentReport report : commentReports) {
-            if (report.getCommentId().equals(commentId) && 
-                report.getReporterId().equals(currentUser.getId()) &&
-                !report.isResolved()) {
-                return false; // Already reported
+            // Check if already reported by this user
+            for (CommentReport report : commentReports) {
+                if (report.getCommentId().equals(commentId) && 
+                    report.getReporterId().equals(actor.getId()) &&
+                    !report.isResolved()) {
+                    return false; // Already reported
+                }
             }
-        }
         
-        // Create report
-        String reportId = "report_" + (reportIdCounter++);
-        CommentReport report = new CommentReport(
-            reportId,
-            commentId,
-            postId,
-            currentUser.getId(),
-            currentUser.getUsername(),
-            comment.getAuthorId(),
-            comment.getAuthorUsername(),
-            comment.getContent(),
-            reason.trim()
-        );
+            // Create report
+            String reportId = "report_" + reportIdCounter.getAndIncrement();
+            CommentReport report = new CommentReport(
+                reportId,
+                commentId,
+                postId,
+                actor.getId(),
+                actor.getUsername(),
+                comment.getAuthorId(),
+                comment.getAuthorUsername(),
+                comment.getContent(),
+                reason.trim()
+            );
         
-        commentReports.add(report);
-        saveData();
-        return true;
+            commentReports.add(report);
+            journal(DataPersistence.upsert(report));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
+    public List<CommentReport> getUnresolvedReports() {
+        return getUnresolvedReports(currentSession);
+    }
+
     /**
      * Get all unresolved comment reports (admin only)
      */
-    public List<CommentReport> getUnresolvedReports() {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return new ArrayList<>();
-        }
+    public List<CommentReport> getUnresolvedReports(Session session) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return new ArrayList<>();
+            }
         
-        List<CommentReport> unresolvedReports = new ArrayList<>();
-        for (CommentReport report : commentReports) {
-            if (!report.isResolved()) {
-                unresolvedReports.add(report);
+            List<CommentReport> unresolvedReports = new ArrayList<>();
+            for (CommentReport report : commentReports) {
+                if (!report.isResolved()) {
+                    unresolvedReports.add(report);
+                }
             }
-        }
         
-        // Sort by timestamp, newest first
-        unresolvedReports.sort((r1, r2) -> Long.compare(r2.getTimestamp(), r1.getTimestamp()));
+            // Sort by timestamp, newest first
+            unresolvedReports.sort((r1, r2) -> Long.compare(r2.getTimestamp(), r1.getTimestamp()));
         
-        return unresolvedReports;
+            return unresolvedReports;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
+    public int getUnresolvedReportCount() {
+        return getUnresolvedReportCount(currentSession);
+    }
+
     /**
      * Get count of unresolved reports (admin only)
      */
-    public int getUnresolvedReportCount() {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return 0;
-        }
+    public int getUnresolvedReportCount(Session session) {
+        lock.readLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return 0;
+            }
         
-        int count = 0;
-        for (CommentReport report : commentReports) {
-            if (!report.isResolved()) {
-                count++;
+            int count = 0;
+            for (CommentReport report : commentReports) {
+                if (!report.isResolved()) {
+                    count++;
+                }
             }
+            return count;
+        } finally {
+            lock.readLock().unlock();
         }
-        return count;
     }
     
+    public boolean resolveReport(String reportId) {
+        return resolveReport(currentSession, reportId);
+    }
+
     /**
      * Mark a report as resolved (admin only)
      */
-    public boolean resolveReport(String reportId) {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return false;
-        }
+    public boolean resolveReport(Session session, String reportId) {
+        lock.writeLock().lock();
+        try {
+            User actor = userOf(session);
+            if (actor == null || !(actor instanceof Admin)) {
+                return false;
+            }
         
-        for (CommentReport report : commentReports) {
-            if (report.getReportId().equals(reportId)) {
-                report.setResolved(true);
-                saveData();
-                return true;
+            for (CommentReport report : commentReports) {
+                if (report.getReportId().equals(reportId)) {
+                    report.setResolved(true);
+                    journal(DataPersistence.upsert(report));
+                    return true;
+                }
             }
-        }
         
-        return false;
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
+    public boolean deleteReportedComment(String commentId, String postId) {
+        return deleteReportedComment(currentSession, commentId, postId);
+    }
+
     /**
      * Delete a reported comment (admin only)
      */
-    public boolean deleteReportedComment(String commentId, String postId) {
-        if (currentUser == null || !(currentUser instanceof Admin)) {
-            return false;
-        }
-        
-        Post post = getPostById(postId);
-        if (post == null) {
+    public boolean deleteReportedComment(Session session, String commentId, String postId) {
+        User actor = userOf(session);
+        if (actor == null || !(actor instanceof Admin)) {
             return false;
         }
         
-        boolean removed = post.removeComment(commentId);
-        if (removed) {
-            // Mark all reports for this comment as resolved
-            for (CommentReport report : commentReports) {
-                if (report.getCommentId().equals(commentId)) {
-                    report.setResolved(true);
+        lock.writeLock().lock();
+        try {
+            Post post = getPostById(postId);
+            if (post == null) {
+                return false;
+            }
+            
+            // The post's lock too, so the lazy posts cache leaves its body alone meanwhile
+            Lock postLock = postLock(postId);
+            postLock.lock();
+            try {
+                boolean removed = post.removeComment(commentId);
+                if (removed) {
+                    if (textSearch != null) {
+                        textSearch.removeComment(commentId);
+                    }
+                    // Mark all reports for this comment as resolved
+                    ArrayList<DataPersistence.JournalEntry> changes = new ArrayList<>();
+                    changes.add(DataPersistence.upsert(post));
+                    for (CommentReport report : commentReports) {
+                        if (report.getCommentId().equals(commentId)) {
+                            report.setResolved(true);
+                            changes.add(DataPersistence.upsert(report));
+                        }
+                    }
+                    journal(changes.toArray(new DataPersistence.JournalEntry[0]));
                 }
+                return removed;
+            } finally {
+                postLock.unlock();
             }
-            saveData();
+        } finally {
+            lock.writeLock().unlock();
         }
-        
-        return removed;
     }
     
     /**
-     * Save current data to files
+     * Save current data to files (full snapshot / checkpoint).
+     * The data is encoded here and written by the background writer.
      */
     public void saveData() {
-        DataPersistence.saveData(users, posts, userIdCounter, postIdCounter, commentIdCounter, 
-                                reportIdCounter, verificationRequests, commentReports);
+        lock.writeLock().lock();
+        try {
+            // Media dropped by changes that failed to journal can go once this snapshot is written
+            List<String> released = new ArrayList<>();
+            for (String reference; (reference = deferredReleases.poll()) != null; ) {
+                released.add(reference);
+            }
+            CompletableFuture<Void> written = writer.submitSnapshot(DataPersistence.encodeSnapshot(
+                users, posts, userIdCounter.get(), postIdCounter.get(), commentIdCounter.get(),
+                reportIdCounter.get(), verificationRequests, commentReports));
+            journalRecordCount.set(0);
+            if (!released.isEmpty()) {
+                releaseMediaWhenWritten(released, written);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
     /**
-     * Manually trigger data save (useful for shutdown hooks)
+     * Record a mutation in the journal, checkpointing once enough records pile up.
+     * Callers holding only the read lock call checkpointIfDue after releasing it.
+     */
+    private CompletableFuture<Void> journal(DataPersistence.JournalEntry... entries) {
+        CompletableFuture<Void> written = writer.submitRecord(DataPersistence.encodeJournalRecord(
+            entries, userIdCounter.get(), postIdCounter.get(), commentIdCounter.get(), reportIdCounter.get()));
+        journalRecordCount.incrementAndGet();
+        if (lock.isWriteLockedByCurrentThread()) {
+            checkpointIfDue();
+        }
+        return written;
+    }
+    
+    // Helper: Take a snapshot once enough journal records piled up, or the journal could
+    // not be written (a snapshot needs the write lock, so not while holding the read lock)
+    private void checkpointIfDue() {
+        if (!writer.hasJournalFailed() && journalRecordCount.get() < CHECKPOINT_INTERVAL) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (writer.hasJournalFailed() || journalRecordCount.get() >= CHECKPOINT_INTERVAL) {
+                writer.clearJournalFailed();
+                saveData(); // Also the fallback when the journal could not be written
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Helper: As below, for one value (plain paths have nothing to release)
+    private void releaseMediaWhenWritten(String reference, CompletableFuture<Void> written) {
+        if (MediaStore.isReference(reference)) {
+            releaseMediaWhenWritten(List.of(reference), written);
+        }
+    }
+
+    /**
+     * Helper: Drop media references once the change that removed them is on disk.
+     * If it could not be written they wait for the next snapshot, which contains the change.
+     */
+    private void releaseMediaWhenWritten(List<String> references, CompletableFuture<Void> written) {
+        written.whenComplete((ignored, error) -> {
+            if (error != null) {
+                deferredReleases.addAll(references);
+                return;
+            }
+            for (String reference : references) {
+                MediaStore.getInstance().release(reference);
+            }
+        });
+    }
+
+    // Lock stripe of a post, for changes to its likes and comments
+    private Lock postLock(String postId) {
+        return postLocks[Math.floorMod(postId.hashCode(), POST_LOCK_STRIPES)];
+    }
+    
+    /**
+     * Helper: Copy an uploaded file into the media store and return its reference,
+     * or null if it can't be stored (e.g. the file doesn't exist)
+     */
+    private String storeMedia(String path) {
+        if (path == null || path.trim().isEmpty()) {
+            return path;
+        }
+        try {
+            return MediaStore.getInstance().ingest(path);
+        } catch (IOException e) {
+            System.err.println("Could not store media " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Post body cache metrics, or null when lazy posts mode is off
+     */
+    public String getPostCacheStats() {
+        return postBodies != null ? postBodies.getStats() : null;
+    }
+    
+    /**
+     * Future that completes once every change made so far is on disk, or fails
+     * if some change could not be written
+     */
+    public CompletableFuture<Void> whenPersisted() {
+        return writer.flush();
+    }
+    
+    /**
+     * Manually trigger data save and wait until it is on disk (useful for shutdown hooks)
      */
     public void forceSave() {
         saveData();
-        System.out.println("✓ Data saved successfully");
+        try {
+            writer.flush().join();
+            System.out.println("✓ Data saved successfully");
+        } catch (CompletionException e) {
+            System.err.println("Error saving data: " + e.getCause().getMessage());
+        }
     }
 }
@@ -0,0 +1,330 @@
+package system;
+
+import models.Comment;
+import models.ImagePost;
+import models.Post;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * TextSearchIndex - Inverted index over post text, image captions and comments
+ * Every post body and every comment is a document with a sequence number, given
+ * out oldest post first, so each term's posting list (documents and term counts)
+ * is sorted by recency. Queries walk the lists newest first, score documents with
+ * BM25 and keep the best posts in a small heap; a post scores its body plus its
+ * best matching comment. Very common terms stop after MAX_POSTINGS_PER_TERM of the
+ * newest documents, so no query scans the whole collection.
+ * Deleted documents are only marked dead; the lists are compacted once there are
+ * as many dead documents in them as live ones.
+ * Searches run concurrently with each other; updates (comments are indexed while
+ * other threads search) wait for them.
+ */
+class TextSearchIndex {
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final int MAX_POSTINGS_PER_TERM = 100_000;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+        "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in", "is", "it",
+        "of", "on", "or", "so", "that", "the", "this", "to", "was", "with"));
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<String, Postings> terms = new HashMap<>();
+    private final ArrayList<Post> docPosts = new ArrayList<>(); // Document -> its post, null once dead
+    private final ArrayList<String> docComments = new ArrayList<>(); // Document -> comment id, null for bodies
+    private int[] docLengths = new int[1024];
+    private final HashMap<String, IntList> docsByPost = new HashMap<>(); // Post id -> body and comment documents
+    private final HashMap<String, Integer> docsByComment = new HashMap<>();
+    private int liveDocs;
+    private int deadDocs; // Killed since the last compaction, still in the posting lists
+    private long liveLength; // Sum of live document lengths, for the average
+
+    // ==================== TOKENIZER ====================
+
+    /**
+     * Split text into lower-cased letter/digit runs, without stop words and one-letter tokens
+     */
+    static List<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i - start > 1) {
+                String token = text.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)).toLowerCase(Locale.ROOT);
+                if (!STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    // Searchable text of a post body
+    static String bodyText(Post post) {
+        if (post instanceof ImagePost) {
+            return ((ImagePost) post).getCaption();
+        }
+        return post.getContent();
+    }
+
+    // ==================== UPDATES ====================
+
+    /**
+     * Index a post and its comments (posts must be added oldest first to keep lists in recency order)
+     */
+    void addPost(Post post) {
+        addPost(post, bodyText(post), post.getComments());
+    }
+
+    // Same, with the text given (used while building from segment copies)
+    void addPost(Post post, String body, List<Comment> comments) {
+        lock.writeLock().lock();
+        try {
+            removePost(post.getId());
+            addDocument(post, null, body);
+            for (Comment comment : comments) {
+                addComment(post, comment);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void addComment(Post post, Comment comment) {
+        lock.writeLock().lock();
+        try {
+            if (docsByComment.containsKey(comment.getId()) || !docsByPost.containsKey(post.getId())) {
+                return; // Already indexed, or the post is not (its comments come with it)
+            }
+            docsByComment.put(comment.getId(), addDocument(post, comment.getId(), comment.getContent()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removePost(String postId) {
+        lock.writeLock().lock();
+        try {
+            IntList docs = docsByPost.remove(postId);
+            if (docs == null) {
+                return;
+            }
+            for (int i = 0; i < docs.size; i++) {
+                int doc = docs.values[i];
+                if (docComments.get(doc) != null) {
+                    docsByComment.remove(docComments.get(doc));
+                }
+                killDocument(doc);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeComment(String commentId) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docsByComment.remove(commentId);
+            if (doc != null) {
+                killDocument(doc);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            terms.clear();
+            docPosts.clear();
+            docComments.clear();
+            docsByPost.clear();
+            docsByComment.clear();
+            liveDocs = 0;
+            deadDocs = 0;
+            liveLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * The limit best matching posts that pass the filter, best first (ties: newest first)
+     */
+    List<Post> search(String query, int limit, Predicate<Post> visible) {
+        lock.readLock().lock();
+        try {
+            List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+            if (queryTerms.isEmpty() || limit <= 0 || liveDocs == 0) {
+                return new ArrayList<>();
+            }
+            double averageLength = (double) liveLength / liveDocs;
+
+            // Term at a time: accumulate each document's score
+            HashMap<Integer, Double> docScores = new HashMap<>();
+            for (String term : queryTerms) {
+                Postings postings = terms.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                // Document frequency still counts dead documents until the next compaction
+                int frequencyOfTerm = Math.min(postings.size, liveDocs);
+                double idf = Math.log(1 + (liveDocs - frequencyOfTerm + 0.5) / (frequencyOfTerm + 0.5));
+                int visited = 0;
+                for (int i = postings.size - 1; i >= 0 && visited < MAX_POSTINGS_PER_TERM; i--) {
+                    int doc = postings.docs[i];
+                    if (docPosts.get(doc) == null) {
+                        continue; // Dead
+                    }
+                    visited++;
+                    int frequency = postings.frequencies[i];
+                    double norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+                    docScores.merge(doc, idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+                }
+            }
+
+            // Per post: body score plus the best comment score
+            HashMap<Post, double[]> postScores = new HashMap<>(); // [body, best comment]
+            for (Map.Entry<Integer, Double> entry : docScores.entrySet()) {
+                int doc = entry.getKey();
+                Post post = docPosts.get(doc);
+                double[] scores = postScores.computeIfAbsent(post, k -> new double[2]);
+                if (docComments.get(doc) == null) {
+                    scores[0] = entry.getValue();
+                } else {
+                    scores[1] = Math.max(scores[1], entry.getValue());
+                }
+            }
+
+            // Top k with a min-heap
+            Comparator<Map.Entry<Post, Double>> order = Comparator
+                .comparingDouble((Map.Entry<Post, Double> e) -> e.getValue())
+                .thenComparingLong(e -> e.getKey().getTimestamp());
+            PriorityQueue<Map.Entry<Post, Double>> best = new PriorityQueue<>(order);
+            for (Map.Entry<Post, double[]> entry : postScores.entrySet()) {
+                if (!visible.test(entry.getKey())) {
+                    continue;
+                }
+                best.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue()[0] + entry.getValue()[1]));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+            ArrayList<Post> results = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                results.add(best.poll().getKey());
+            }
+            Collections.reverse(results);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== INTERNALS ====================
+
+    private int addDocument(Post post, String commentId, String text) {
+        int doc = docPosts.size();
+        docPosts.add(post);
+        docComments.add(commentId);
+        if (doc == docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, doc * 2);
+        }
+        List<String> tokens = tokenize(text);
+        HashMap<String, Integer> counts = new HashMap<>();
+        for (String token : tokens) {
+            counts.merge(token, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            terms.computeIfAbsent(entry.getKey(), k -> new Postings()).add(doc, entry.getValue());
+        }
+        docLengths[doc] = tokens.size();
+        docsByPost.computeIfAbsent(post.getId(), k -> new IntList()).add(doc);
+        liveDocs++;
+        liveLength += tokens.size();
+        return doc;
+    }
+
+    private void killDocument(int doc) {
+        if (docPosts.get(doc) != null) {
+            docPosts.set(doc, null);
+            docComments.set(doc, null);
+            liveDocs--;
+            deadDocs++;
+            liveLength -= docLengths[doc];
+        }
+    }
+
+    // Helper: Drop dead documents from every posting list once they are half of the entries
+    private void compactIfNeeded() {
+        if (deadDocs < 1024 || deadDocs < liveDocs) {
+            return;
+        }
+        deadDocs = 0;
+        Iterator<Postings> iterator = terms.values().iterator();
+        while (iterator.hasNext()) {
+            Postings postings = iterator.next();
+            int kept = 0;
+            for (int i = 0; i < postings.size; i++) {
+                if (docPosts.get(postings.docs[i]) != null) {
+                    postings.docs[kept] = postings.docs[i];
+                    postings.frequencies[kept] = postings.frequencies[i];
+                    kept++;
+                }
+            }
+            postings.size = kept;
+            if (kept == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Postings - Documents containing a term (ascending, so oldest first) and the term's count in each
+     */
+    private static final class Postings {
+        int[] docs = new int[2];
+        int[] frequencies = new int[2];
+        int size;
+
+        void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[1];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package system;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ThumbnailStore - Small pre-scaled copies of post images and profile photos
+ * Thumbnails are PNG files in data/thumbnails named after the SHA-256 of the
+ * source file's content and the variant (feed width, or a square avatar size),
+ * so identical images share their thumbnails whatever path they come from.
+ * An index remembers each source's hash with the modification time and length it
+ * was hashed at; when those change, the source is hashed again and the missing
+ * thumbnails are generated on the next request. Media store references need no
+ * index, their hash is part of the reference. New images are ingested in the
+ * background when they are posted or set as profile photo.
+ * Thumbnails of replaced content are left in place, they may still be shared.
+ */
+public final class ThumbnailStore {
+    private static final String DIR = "data" + File.separator + "thumbnails";
+    private static final String INDEX_FILE = DIR + File.separator + "index.dat";
+    private static final int INDEX_VERSION = 1;
+
+    public static final int FEED_WIDTH = 600;
+    private static final int[] AVATAR_SIZES = {32, 48, 100};
+
+    private static final ThumbnailStore INSTANCE = new ThumbnailStore();
+
+    private final HashMap<String, Source> sources = new HashMap<>(); // Absolute source path -> last hash
+    private boolean indexLoaded;
+    private final ExecutorService ingester = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "thumbnail-ingest");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    /**
+     * Source - What a source file looked like when it was hashed
+     */
+    private static final class Source {
+        final long modified;
+        final long length;
+        final String hash;
+
+        Source(long modified, long length, String hash) {
+            this.modified = modified;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        boolean matches(File file) {
+            return file.lastModified() == modified && file.length() == length;
+        }
+    }
+
+    private ThumbnailStore() {
+    }
+
+    public static ThumbnailStore getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== INGESTION ====================
+
+    /**
+     * Generate the feed thumbnail of a newly posted image in the background
+     */
+    public void ingestPostImage(String path) {
+        ingest(path, new int[] {FEED_WIDTH}, false);
+    }
+
+    /**
+     * Generate the avatar thumbnails of a new profile photo in the background
+     */
+    public void ingestProfilePhoto(String path) {
+        ingest(path, AVATAR_SIZES, true);
+    }
+
+    private void ingest(String path, int[] widths, boolean square) {
+        if (path == null || path.trim().isEmpty()) {
+            return;
+        }
+        ingester.execute(() -> {
+            for (int width : widths) {
+                try {
+                    find(path, width, square);
+                } catch (IOException e) {
+                    System.err.println("Could not create thumbnail for " + path + ": " + e.getMessage());
+                    return;
+                }
+            }
+        });
+    }
+
+    // ==================== LOOKUP ====================
+
+    /**
+     * The smallest thumbnail that can be scaled down to the given display size: a
+     * square avatar of at least width pixels, or the feed thumbnail for widths up to
+     * FEED_WIDTH. Returns null if no variant is large enough (use the source itself).
+     * Generates the thumbnail if it is missing or the source has changed, so call it
+     * off the EDT. Throws FileNotFoundException if the source is missing.
+     */
+    public File find(String path, int width, boolean square) throws IOException {
+        int variant = square ? smallestAvatarSize(width) : (width <= FEED_WIDTH ? FEED_WIDTH : -1);
+        if (variant < 0) {
+            return null;
+        }
+        File source = MediaStore.getInstance().resolve(path);
+        if (!source.isFile()) {
+            throw new FileNotFoundException(source.getName());
+        }
+        // Stored media is named by its hash already, and never changes
+        String hash = MediaStore.isReference(path) ? MediaStore.hashOf(path) : hashOf(source);
+        File thumbnail = new File(DIR, hash + (square ? "-s" : "-w") + variant + ".png");
+        if (!thumbnail.isFile()) {
+            generate(source, thumbnail, variant, square);
+        }
+        return thumbnail;
+    }
+
+    private static int smallestAvatarSize(int size) {
+        for (int avatarSize : AVATAR_SIZES) {
+            if (avatarSize >= size) {
+                return avatarSize;
+            }
+        }
+        return -1;
+    }
+
+    // Helper: Content hash of a source, from the index unless the file has changed since
+    private String hashOf(File source) throws IOException {
+        String key = source.getAbsolutePath();
+        synchronized (this) {
+            loadIndex();
+            Source known = sources.get(key);
+            if (known != null && known.matches(source)) {
+                return known.hash;
+            }
+        }
+        // Hash outside the lock, other images can be looked up meanwhile
+        long modified = source.lastModified();
+        long length = source.length();
+        String hash = sha256(source);
+        synchronized (this) {
+            sources.put(key, new Source(modified, length, hash));
+            saveIndex();
+        }
+        return hash;
+    }
+
+    private static void generate(File source, File thumbnail, int width, boolean square) throws IOException {
+        BufferedImage image = readSubsampled(source, width, square ? width : 0);
+        int thumbnailWidth = square ? width : Math.min(width, image.getWidth());
+        int thumbnailHeight = square ? width
+            : Math.max(1, (int) Math.round((double) thumbnailWidth / image.getWidth() * image.getHeight()));
+        BufferedImage scaled = scale(image, thumbnailWidth, thumbnailHeight);
+
+        // Written aside and renamed, so a reader never sees half a file
+        new File(DIR).mkdirs();
+        File tempFile = File.createTempFile("thumb", ".tmp", new File(DIR));
+        try {
+            if (!ImageIO.write(scaled, "png", tempFile)) {
+                throw new IOException("No PNG writer");
+            }
+            try {
+                Files.move(tempFile.toPath(), thumbnail.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), thumbnail.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    // ==================== IMAGE HELPERS ====================
+
+    /**
+     * Decode an image, skipping pixels while it stays at least minWidth x minHeight
+     * (0 ignores that dimension), so large files decode only about what is displayed
+     */
+    public static BufferedImage readSubsampled(File file, int minWidth, int minHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image: " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int step = Integer.MAX_VALUE;
+                if (minWidth > 0) {
+                    step = Math.min(step, reader.getWidth(0) / minWidth);
+                }
+                if (minHeight > 0) {
+                    step = Math.min(step, reader.getHeight(0) / minHeight);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1 && step != Integer.MAX_VALUE) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale an image once into a new ARGB image (rather than scaling while painting)
+     */
+    public static BufferedImage scale(BufferedImage source, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = scaled.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.drawImage(source, 0, 0, width, height, null);
+        g2d.dispose();
+        return scaled;
+    }
+
+    private static String sha256(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // ==================== INDEX ====================
+
+    // Layout: version, count, then per source its path, modification time, length and hash
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        indexLoaded = true;
+        File file = new File(INDEX_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_VERSION) {
+                return; // Unknown format, the hashes are simply computed again
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long modified = in.readLong();
+                long length = in.readLong();
+                sources.put(path, new Source(modified, length, in.readUTF()));
+            }
+        } catch (IOException e) {
+            System.err.println("Thumbnail index unreadable, rebuilding: " + e.getMessage());
+            sources.clear();
+        }
+    }
+
+    private void saveIndex() {
+        new File(DIR).mkdirs();
+        File file = new File(INDEX_FILE);
+        File tempFile = new File(INDEX_FILE + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(sources.size());
+                for (Map.Entry<String, Source> entry : sources.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().modified);
+                    out.writeLong(entry.getValue().length);
+                    out.writeUTF(entry.getValue().hash);
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Could not save thumbnail index: " + e.getMessage());
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package system;
+
+import models.Post;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TimelineStore - Precomputed home feeds (fan-out on write)
+ * Each timeline holds the newest posts of the people a user follows plus the
+ * user's own posts, newest first and capped at CAPACITY entries.
+ * Timelines are built on first read and then kept up to date by SocialNetworkSystem.
+ * The store may be used concurrently; a timeline's entries change only under the
+ * system's write lock and are read under its read lock.
+ */
+class TimelineStore {
+    static final int CAPACITY = 1000;
+
+    private final ConcurrentHashMap<String, Timeline> timelines = new ConcurrentHashMap<>();
+
+    Timeline get(String userId) {
+        return timelines.get(userId);
+    }
+
+    // Store a timeline unless one was stored meanwhile, which is returned instead
+    Timeline putIfAbsent(String userId, Timeline timeline) {
+        return timelines.putIfAbsent(userId, timeline);
+    }
+
+    // Drop a timeline so it is rebuilt on the next read
+    void invalidate(String userId) {
+        timelines.remove(userId);
+    }
+
+    void clear() {
+        timelines.clear();
+    }
+
+    /**
+     * Timeline - Bounded list of posts, newest first
+     */
+    static class Timeline {
+        private final ArrayList<Post> entries = new ArrayList<>();
+        private boolean truncated; // True once older posts have been dropped to stay within CAPACITY
+
+        // Build from any number of post lists (order does not matter)
+        static Timeline of(List<List<Post>> sources) {
+            Timeline timeline = new Timeline();
+            for (List<Post> source : sources) {
+                timeline.entries.addAll(source);
+            }
+            timeline.entries.sort(NEWEST_FIRST);
+            timeline.trim();
+            return timeline;
+        }
+
+        // Push a post, normally the newest one so it lands at the front
+        void add(Post post) {
+            int index = 0;
+            while (index < entries.size() && NEWEST_FIRST.compare(entries.get(index), post) < 0) {
+                index++;
+            }
+            entries.add(index, post);
+            trim();
+        }
+
+        // Merge a followed user's posts into the timeline (backfill after a follow)
+        void addAll(List<Post> posts) {
+            if (posts.isEmpty()) {
+                return;
+            }
+            entries.addAll(posts);
+            entries.sort(NEWEST_FIRST);
+            trim();
+        }
+
+        boolean remove(String postId) {
+            return entries.removeIf(p -> p.getId().equals(postId));
+        }
+
+        /**
+         * Remove all posts by an author (after an unfollow).
+         * Returns false when the timeline had been truncated, because older posts from
+         * other authors may now belong in it and it has to be rebuilt instead.
+         */
+        boolean removeAuthor(String authorId) {
+            entries.removeIf(p -> p.getAuthorId().equals(authorId));
+            return !truncated;
+        }
+
+        List<Post> getPosts() {
+            return Collections.unmodifiableList(entries);
+        }
+
+        // Up to limit posts that come after the cursor (from the top when cursor is null)
+        Page<Post> page(PageCursor after, int limit) {
+            int from = 0;
+            if (after != null) {
+                // Binary search for the first entry past the cursor
+                int low = 0, high = entries.size();
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (after.isBefore(entries.get(mid))) {
+                        high = mid;
+                    } else {
+                        low = mid + 1;
+                    }
+                }
+                from = low;
+            }
+            int to = Math.min(entries.size(), from + limit);
+            List<Post> items = new ArrayList<>(entries.subList(from, to));
+            PageCursor next = (to < entries.size() && !items.isEmpty()) ? PageCursor.of(items.get(items.size() - 1)) : null;
+            return new Page<>(items, next);
+        }
+
+        private void trim() {
+            if (entries.size() > CAPACITY) {
+                entries.subList(CAPACITY, entries.size()).clear();
+                truncated = true;
+            }
+        }
+    }
+
+    // Same order as PageCursor so timeline pages line up with cursors
+    static final Comparator<Post> NEWEST_FIRST = (p1, p2) ->
+        PageCursor.compare(p1.getTimestamp(), p1.getId(), p2.getTimestamp(), p2.getId());
+}
@@ -0,0 +1,203 @@
+package system;
+
+import models.User;
+import java.util.*;
+
+/**
+ * UserSearchIndex - N-gram index over usernames and full names for user search
+ * Every user gets an ordinal (its position in registration order), and every
+ * 2- and 3-character substring of its lower-cased username and full name lists
+ * the ordinals containing it, sorted. A query only looks at the users in the
+ * shortest list among its n-grams and checks them against the cached lower-cased
+ * names, so nothing is allocated per user. Results come in registration order,
+ * the order the old linear search returned them in.
+ */
+class UserSearchIndex {
+    private final ArrayList<User> users = new ArrayList<>();          // By ordinal
+    private final ArrayList<String> usernames = new ArrayList<>();    // Lower-cased, by ordinal
+    private final ArrayList<String> fullNames = new ArrayList<>();    // Lower-cased, by ordinal
+    private final HashMap<String, Integer> ordinals = new HashMap<>(); // User id -> ordinal
+    private final HashMap<Long, Postings> grams = new HashMap<>();
+
+    void add(User user) {
+        if (ordinals.containsKey(user.getId())) {
+            update(user);
+            return;
+        }
+        int ordinal = users.size();
+        ordinals.put(user.getId(), ordinal);
+        users.add(user);
+        usernames.add(normalize(user.getUsername()));
+        fullNames.add(normalize(user.getFullName()));
+        for (long gram : gramsOf(ordinal)) {
+            grams.computeIfAbsent(gram, k -> new Postings()).add(ordinal);
+        }
+    }
+
+    /**
+     * Re-index a user after its username or full name changed
+     */
+    void update(User user) {
+        Integer ordinal = ordinals.get(user.getId());
+        if (ordinal == null) {
+            add(user);
+            return;
+        }
+        for (long gram : gramsOf(ordinal)) {
+            Postings postings = grams.get(gram);
+            if (postings != null && postings.remove(ordinal) && postings.size == 0) {
+                grams.remove(gram);
+            }
+        }
+        usernames.set(ordinal, normalize(user.getUsername()));
+        fullNames.set(ordinal, normalize(user.getFullName()));
+        for (long gram : gramsOf(ordinal)) {
+            grams.computeIfAbsent(gram, k -> new Postings()).add(ordinal);
+        }
+    }
+
+    /**
+     * Users whose username or full name contains the query, or starts with it
+     * (the username, or any word of the full name) when prefix is set.
+     * Starts after the user with id afterId (null for the first page) and stops
+     * after limit results.
+     */
+    List<User> search(String query, boolean prefix, String afterId, int limit) {
+        ArrayList<User> results = new ArrayList<>();
+        String lowerQuery = normalize(query);
+        if (lowerQuery.isEmpty() || limit <= 0) {
+            return results;
+        }
+        int start = 0;
+        if (afterId != null) {
+            Integer after = ordinals.get(afterId);
+            if (after == null) {
+                return results;
+            }
+            start = after + 1;
+        }
+
+        if (lowerQuery.length() == 1) {
+            // Too short for an n-gram, but nearly every user matches one character,
+            // so the limit is usually reached after a short scan
+            for (int ordinal = start; ordinal < users.size() && results.size() < limit; ordinal++) {
+                if (matches(ordinal, lowerQuery, prefix)) {
+                    results.add(users.get(ordinal));
+                }
+            }
+            return results;
+        }
+
+        Postings candidates = null;
+        int n = Math.min(3, lowerQuery.length());
+        for (int i = 0; i + n <= lowerQuery.length(); i++) {
+            Postings postings = grams.get(gramKey(lowerQuery, i, n));
+            if (postings == null) {
+                return results; // Some part of the query occurs in no name
+            }
+            if (candidates == null || postings.size < candidates.size) {
+                candidates = postings;
+            }
+        }
+        for (int i = candidates.firstAtLeast(start); i < candidates.size && results.size() < limit; i++) {
+            int ordinal = candidates.ordinals[i];
+            if (matches(ordinal, lowerQuery, prefix)) {
+                results.add(users.get(ordinal));
+            }
+        }
+        return results;
+    }
+
+    // Helper: Check the cached names of a candidate
+    private boolean matches(int ordinal, String lowerQuery, boolean prefix) {
+        String username = usernames.get(ordinal);
+        String fullName = fullNames.get(ordinal);
+        if (!prefix) {
+            return username.contains(lowerQuery) || fullName.contains(lowerQuery);
+        }
+        if (username.startsWith(lowerQuery) || fullName.startsWith(lowerQuery)) {
+            return true;
+        }
+        for (int i = fullName.indexOf(lowerQuery); i > 0; i = fullName.indexOf(lowerQuery, i + 1)) {
+            if (Character.isWhitespace(fullName.charAt(i - 1))) {
+                return true; // Start of a later word
+            }
+        }
+        return false;
+    }
+
+    // Helper: Distinct 2- and 3-grams of a user's names
+    private Set<Long> gramsOf(int ordinal) {
+        HashSet<Long> keys = new HashSet<>();
+        for (String name : new String[] {usernames.get(ordinal), fullNames.get(ordinal)}) {
+            for (int n = 2; n <= 3; n++) {
+                for (int i = 0; i + n <= name.length(); i++) {
+                    keys.add(gramKey(name, i, n));
+                }
+            }
+        }
+        return keys;
+    }
+
+    // Up to three chars and the length packed into one key
+    private static long gramKey(String text, int start, int n) {
+        long key = n;
+        for (int i = 0; i < 3; i++) {
+            key = (key << 16) | (i < n ? text.charAt(start + i) : 0);
+        }
+        return key;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Postings - Sorted ordinals of the users containing one n-gram
+     */
+    private static final class Postings {
+        int[] ordinals = new int[4];
+        int size;
+
+        void add(int ordinal) {
+            int position = firstAtLeast(ordinal);
+            if (position < size && ordinals[position] == ordinal) {
+                return;
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            System.arraycopy(ordinals, position, ordinals, position + 1, size - position);
+            ordinals[position] = ordinal;
+            size++;
+        }
+
+        boolean remove(int ordinal) {
+            int position = firstAtLeast(ordinal);
+            if (position == size || ordinals[position] != ordinal) {
+                return false;
+            }
+            System.arraycopy(ordinals, position + 1, ordinals, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        // Position of the first ordinal >= value (size if none)
+        int firstAtLeast(int value) {
+            if (size == 0 || ordinals[size - 1] < value) {
+                return size; // Common case while registering: append
+            }
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ordinals[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}